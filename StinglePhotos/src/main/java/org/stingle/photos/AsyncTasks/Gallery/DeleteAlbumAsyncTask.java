@@ -58,6 +58,7 @@ public class DeleteAlbumAsyncTask extends AsyncTask<Void, Void, Boolean> {
 			if(SyncManager.notifyCloudAboutAlbumDelete(context.get(), albumId)){
 				albumsDb.deleteAlbum(albumId);
 				albumsDb.close();
+				StinglePhotosApplication.getAlbumKeyring().invalidate(albumId);
 				return true;
 			}
 		}
@@ -9,6 +9,7 @@ import org.stingle.photos.Db.Query.AlbumFilesDb;
 import org.stingle.photos.Db.Query.GalleryTrashDb;
 import org.stingle.photos.Files.FileManager;
 import org.stingle.photos.Sync.SyncManager;
+import org.stingle.photos.Video.PreviewStrip;
 
 import java.io.File;
 import java.lang.ref.WeakReference;
@@ -64,6 +65,7 @@ public class DeleteFilesAsyncTask extends AsyncTask<Void, Void, Void> {
 					if (thumbFile.exists()) {
 						thumbFile.delete();
 					}
+					PreviewStrip.delete(myContext, file.filename);
 					Log.d("deleteFiles", "deleted - " + file.filename);
 				}
 				else{
@@ -10,6 +10,7 @@ import org.stingle.photos.Db.Query.GalleryTrashDb;
 import org.stingle.photos.Db.StingleDb;
 import org.stingle.photos.Files.FileManager;
 import org.stingle.photos.Sync.SyncManager;
+import org.stingle.photos.Video.PreviewStrip;
 
 import java.io.File;
 import java.lang.ref.WeakReference;
@@ -60,6 +61,7 @@ public class EmptyTrashAsyncTask extends AsyncTask<Void, Void, Void> {
 				if (thumbFile.exists()) {
 					thumbFile.delete();
 				}
+				PreviewStrip.delete(myContext, dbFile.filename);
 			}
 
 			trashDb.deleteFile(dbFile.filename);
@@ -8,6 +8,7 @@ import org.stingle.photos.Db.Objects.StingleDbAlbum;
 import org.stingle.photos.Db.Query.AlbumFilesDb;
 import org.stingle.photos.Db.Query.AlbumsDb;
 import org.stingle.photos.Sync.SyncManager;
+import org.stingle.photos.StinglePhotosApplication;
 
 import java.lang.ref.WeakReference;
 
@@ -51,6 +52,7 @@ public class LeaveAlbumAsyncTask extends AsyncTask<Void, Void, Boolean> {
 			db.deleteAlbum(albumId);
 			filesDb.close();
 			db.close();
+			StinglePhotosApplication.getAlbumKeyring().invalidate(albumId);
 			return true;
 		}
 
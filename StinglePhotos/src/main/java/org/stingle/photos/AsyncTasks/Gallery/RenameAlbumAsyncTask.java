@@ -64,6 +64,7 @@ public class RenameAlbumAsyncTask extends AsyncTask<Void, Void, Boolean> {
 			if(notifyResult){
 				db.updateAlbum(album);
 				db.close();
+				StinglePhotosApplication.getAlbumKeyring().invalidate(albumId);
 				return true;
 			}
 		} catch (IOException | CryptoException e) {
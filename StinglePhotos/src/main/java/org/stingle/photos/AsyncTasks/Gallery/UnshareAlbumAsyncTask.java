@@ -7,6 +7,7 @@ import org.stingle.photos.AsyncTasks.OnAsyncTaskFinish;
 import org.stingle.photos.Db.Objects.StingleDbAlbum;
 import org.stingle.photos.Db.Query.AlbumsDb;
 import org.stingle.photos.Sync.SyncManager;
+import org.stingle.photos.StinglePhotosApplication;
 
 import java.lang.ref.WeakReference;
 
@@ -52,6 +53,7 @@ public class UnshareAlbumAsyncTask extends AsyncTask<Void, Void, Boolean> {
 		if(notifyResult){
 			db.updateAlbum(album);
 			db.close();
+			StinglePhotosApplication.getAlbumKeyring().invalidate(albumId);
 			return true;
 		}
 
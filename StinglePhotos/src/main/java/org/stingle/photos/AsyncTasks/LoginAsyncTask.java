@@ -18,6 +18,7 @@ import org.json.JSONObject;
 import org.stingle.photos.Auth.BiometricsManagerWrapper;
 import org.stingle.photos.Auth.KeyManagement;
 import org.stingle.photos.Auth.LoginManager;
+import org.stingle.photos.Crypto.Crypto;
 import org.stingle.photos.Crypto.CryptoException;
 import org.stingle.photos.GalleryActivity;
 import org.stingle.photos.Net.HttpsClient;
@@ -101,7 +102,8 @@ public class LoginAsyncTask extends AsyncTask<Void, Void, Boolean> {
 								StinglePhotosApplication.setKey(StinglePhotosApplication.getCrypto().getPrivateKey(password));
 							}
 							else {
-								boolean importResult = KeyManagement.importKeyBundle(keyBundle, password);
+								Crypto crypto = StinglePhotosApplication.getCrypto();
+								boolean importResult = KeyManagement.importKeyBundle(keyBundle, password, crypto.calibrateKdfParams(Crypto.KDF_CALIBRATION_TARGET_MS));
 								KeyManagement.importServerPublicKey(serverPublicKey);
 
 								if (!importResult) {
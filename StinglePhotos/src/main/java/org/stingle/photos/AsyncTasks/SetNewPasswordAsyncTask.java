@@ -84,7 +84,8 @@ public class SetNewPasswordAsyncTask extends AsyncTask<Void, Void, Boolean> {
 			}
 			byte[] serverPK = Crypto.base64ToByteArray(serverPKB64);
 
-			StinglePhotosApplication.getCrypto().generateMainKeypair(password, privateKey, publicKey);
+			Crypto crypto = StinglePhotosApplication.getCrypto();
+			crypto.generateMainKeypair(password, privateKey, publicKey, crypto.calibrateKdfParams(Crypto.KDF_CALIBRATION_TARGET_MS));
 
 			if(localOnly) {
 				StinglePhotosApplication.setKey(privateKey);
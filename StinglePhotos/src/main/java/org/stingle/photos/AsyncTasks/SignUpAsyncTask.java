@@ -7,6 +7,7 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import org.json.JSONObject;
 import org.stingle.photos.Auth.KeyManagement;
+import org.stingle.photos.Crypto.Crypto;
 import org.stingle.photos.Crypto.CryptoException;
 import org.stingle.photos.Net.HttpsClient;
 import org.stingle.photos.Net.StingleResponse;
@@ -50,7 +51,8 @@ public class SignUpAsyncTask extends AsyncTask<Void, Void, Boolean> {
 
 		HashMap<String, String> postParams = new HashMap<String, String>();
 		try {
-			StinglePhotosApplication.getCrypto().generateMainKeypair(password);
+			Crypto crypto = StinglePhotosApplication.getCrypto();
+			crypto.generateMainKeypair(password, null, null, crypto.calibrateKdfParams(Crypto.KDF_CALIBRATION_TARGET_MS));
 
 			postParams.put("email", email);
 			postParams.put("password", loginHash.get("hash"));
@@ -49,10 +49,17 @@ public class KeyManagement {
 	}
 
 	public static boolean importKeyBundle(String keyBundle, String password){
+		return importKeyBundle(keyBundle, password, null);
+	}
+
+	/**
+	 * @param kdfParams password derivation parameters for unlocking the key on this device, null to use the defaults
+	 */
+	public static boolean importKeyBundle(String keyBundle, String password, Crypto.KdfParams kdfParams){
 		try {
 			byte[] keyBundleBytes = Crypto.base64ToByteArray(keyBundle);
 
-			StinglePhotosApplication.getCrypto().importKeyBundle(keyBundleBytes, password);
+			StinglePhotosApplication.getCrypto().importKeyBundle(keyBundleBytes, password, kdfParams);
 		} catch (IOException | CryptoException e) {
 			e.printStackTrace();
 			return false;
@@ -30,6 +30,7 @@ import org.stingle.photos.R;
 import org.stingle.photos.StinglePhotosApplication;
 import org.stingle.photos.Sync.SyncManager;
 import org.stingle.photos.Util.Helpers;
+import org.stingle.photos.Video.PreviewStrip;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -231,6 +232,7 @@ public class MediaEncryptService extends Service {
 						else{
 							throw new IOException("Failed to generate video thumbnail");
 						}
+						PreviewStrip.generate(context, Uri.fromFile(file), encFilename, realFilename, fileId, videoDuration);
 					}
 
 					String encFilePath = FileManager.getHomeDir(context) + "/" + encFilename;
@@ -0,0 +1,68 @@
+package org.stingle.photos.Crypto;
+
+import android.content.Context;
+import android.util.LruCache;
+
+import org.stingle.photos.Db.Objects.StingleDbAlbum;
+import org.stingle.photos.Db.Query.AlbumsDb;
+import org.stingle.photos.StinglePhotosApplication;
+
+import java.io.IOException;
+
+/**
+ * Keeps opened album keys and metadata, so album files can be decrypted without
+ * querying the album and opening its sealed key every time.
+ *
+ * Returned {@link Crypto.AlbumData} objects are shared and must not be modified.
+ * Whenever an album is changed or removed locally it has to be invalidated with {@link #invalidate}.
+ */
+public class AlbumKeyring {
+
+	private static final int MAX_ALBUMS = 256;
+
+	private final LruCache<String, Crypto.AlbumData> cache = new LruCache<>(MAX_ALBUMS);
+
+	public Crypto.AlbumData get(Context context, String albumId) throws IOException, CryptoException {
+		Crypto.AlbumData albumData = cache.get(albumId);
+		if(albumData != null){
+			return albumData;
+		}
+
+		AlbumsDb albumsDb = new AlbumsDb(context);
+		StingleDbAlbum dbAlbum = albumsDb.getAlbumById(albumId);
+		albumsDb.close();
+
+		if(dbAlbum == null){
+			throw new CryptoException("Album not found");
+		}
+
+		return get(dbAlbum);
+	}
+
+	public Crypto.AlbumData get(StingleDbAlbum album) throws IOException, CryptoException {
+		Crypto.AlbumData albumData = cache.get(album.albumId);
+		if(albumData != null){
+			return albumData;
+		}
+
+		albumData = StinglePhotosApplication.getCrypto().parseAlbumData(album.publicKey, album.encPrivateKey, album.metadata);
+		cache.put(album.albumId, albumData);
+
+		return albumData;
+	}
+
+	/**
+	 * Drops the album keys and all file headers which were opened with them
+	 */
+	public void invalidate(String albumId){
+		if(albumId == null){
+			return;
+		}
+		cache.remove(albumId);
+		StinglePhotosApplication.getHeaderCache().removeByKeyId(albumId);
+	}
+
+	public void clear(){
+		cache.evictAll();
+	}
+}
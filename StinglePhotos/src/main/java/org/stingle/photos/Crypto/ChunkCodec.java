@@ -0,0 +1,220 @@
+package org.stingle.photos.Crypto;
+
+import com.goterl.lazycode.lazysodium.SodiumAndroid;
+import com.goterl.lazycode.lazysodium.interfaces.AEAD;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.SoftReference;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Encrypts and decrypts single chunks of a Stingle file using buffers which are kept between chunks.
+ *
+ * A codec owns the nonce, ciphertext, plaintext and chunk key buffers for one chunk,
+ * so processing a file does not allocate anything per chunk.
+ * Codecs are pooled, get one with {@link #obtain} and give it back with {@link #recycle}.
+ * A codec must not be used from several threads at the same time.
+ */
+public class ChunkCodec {
+
+	private static final int MAX_POOLED_BYTES = 1024 * 1024 * 16;
+	private static final ArrayDeque<SoftReference<ChunkCodec>> pool = new ArrayDeque<>();
+	private static int pooledBytes = 0;
+
+	private static final byte[] contextBytes = Crypto.XCHACHA20POLY1305_IETF_CONTEXT.getBytes();
+
+	private final SodiumAndroid so;
+	private final int chunkSize;
+
+	private final byte[] chunkKey = new byte[AEAD.XCHACHA20POLY1305_IETF_KEYBYTES];
+	private final byte[] nonce = new byte[AEAD.XCHACHA20POLY1305_IETF_NPUBBYTES];
+	private final byte[] cipher;
+	private final byte[] plain;
+	private final long[] resultLength = new long[1];
+
+	private byte[] symmetricKey;
+	private int cipherLength = 0;
+	private int plainLength = 0;
+
+	public ChunkCodec(SodiumAndroid so, int chunkSize){
+		this.so = so;
+		this.chunkSize = chunkSize;
+		this.cipher = new byte[chunkSize + AEAD.XCHACHA20POLY1305_IETF_ABYTES];
+		this.plain = new byte[chunkSize];
+	}
+
+	/**
+	 * Returns a pooled codec for the given chunk size or creates a new one.
+	 */
+	public static ChunkCodec obtain(SodiumAndroid so, int chunkSize, byte[] symmetricKey) throws CryptoException {
+		if(chunkSize < 1 || chunkSize > Crypto.MAX_BUFFER_LENGTH){
+			throw new CryptoException("Invalid chunk size");
+		}
+
+		ChunkCodec codec = null;
+		synchronized (pool) {
+			SoftReference<ChunkCodec> ref;
+			while (codec == null && (ref = pool.poll()) != null) {
+				ChunkCodec pooled = ref.get();
+				if(pooled != null){
+					pooledBytes -= pooled.getMemorySize();
+					if(pooled.chunkSize == chunkSize){
+						codec = pooled;
+					}
+				}
+			}
+			if(pool.isEmpty()){
+				pooledBytes = 0;
+			}
+		}
+
+		if(codec == null){
+			codec = new ChunkCodec(so, chunkSize);
+		}
+		codec.symmetricKey = symmetricKey;
+		return codec;
+	}
+
+	/**
+	 * Forgets the key and puts the codec back to the pool. The codec must not be used after this.
+	 */
+	public void recycle(){
+		symmetricKey = null;
+		cipherLength = 0;
+		plainLength = 0;
+		Arrays.fill(chunkKey, (byte) 0);
+		Arrays.fill(plain, (byte) 0);
+
+		synchronized (pool) {
+			if(pooledBytes + getMemorySize() <= MAX_POOLED_BYTES){
+				pool.push(new SoftReference<>(this));
+				pooledBytes += getMemorySize();
+			}
+		}
+	}
+
+	public int getMemorySize(){
+		return cipher.length + plain.length;
+	}
+
+	/**
+	 * Reads one full chunk of plaintext.
+	 *
+	 * @return number of bytes read or -1 if there is nothing left to read
+	 */
+	public int readPlain(InputStream in) throws IOException {
+		plainLength = ChunkPipeline.readFully(in, plain, 0, chunkSize);
+		if(plainLength < 0){
+			plainLength = 0;
+			return -1;
+		}
+		return plainLength;
+	}
+
+	/**
+	 * Reads one nonce + ciphertext + tag frame.
+	 *
+	 * @return number of bytes read or -1 if there is nothing left to read
+	 */
+	public int readFrame(InputStream in) throws IOException, CryptoException {
+		int nonceRead = ChunkPipeline.readFully(in, nonce, 0, nonce.length);
+		if(nonceRead < 0){
+			cipherLength = 0;
+			return -1;
+		}
+		if(nonceRead < nonce.length){
+			throw new CryptoException("Invalid chunk length");
+		}
+
+		setCipherLength(ChunkPipeline.readFully(in, cipher, 0, cipher.length));
+
+		return nonceRead + cipherLength;
+	}
+
+	public void encrypt(long chunkNumber) throws CryptoException {
+		so.randombytes_buf(nonce, nonce.length);
+		deriveChunkKey(chunkNumber);
+
+		if(so.crypto_aead_xchacha20poly1305_ietf_encrypt(cipher, resultLength, plain, plainLength, null, 0, null, nonce, chunkKey) != 0){
+			throw new CryptoException("Error when encrypting data.");
+		}
+		cipherLength = (int)resultLength[0];
+	}
+
+	public void decrypt(long chunkNumber) throws CryptoException {
+		deriveChunkKey(chunkNumber);
+
+		if(so.crypto_aead_xchacha20poly1305_ietf_decrypt(plain, resultLength, null, cipher, cipherLength, null, 0, nonce, chunkKey) != 0){
+			throw new CryptoException("Error when decrypting data.");
+		}
+		plainLength = (int)resultLength[0];
+	}
+
+	public void writeFrame(OutputStream out) throws IOException {
+		out.write(nonce);
+		out.write(cipher, 0, cipherLength);
+	}
+
+	public void writePlain(OutputStream out) throws IOException {
+		out.write(plain, 0, plainLength);
+	}
+
+	private void deriveChunkKey(long chunkNumber) throws CryptoException {
+		if(symmetricKey == null) {
+			throw new CryptoException("Key is empty");
+		}
+		so.crypto_kdf_derive_from_key(chunkKey, chunkKey.length, chunkNumber, contextBytes, symmetricKey);
+	}
+
+	public int getChunkSize(){
+		return chunkSize;
+	}
+
+	/**
+	 * Buffer for the nonce of the current frame, can be filled directly by the caller.
+	 */
+	public byte[] getNonce(){
+		return nonce;
+	}
+
+	/**
+	 * Buffer for the ciphertext and tag of the current frame, can be filled directly by the caller.
+	 * Call {@link #setCipherLength} afterwards.
+	 */
+	public byte[] getCipher(){
+		return cipher;
+	}
+
+	public int getCipherLength(){
+		return cipherLength;
+	}
+
+	public void setCipherLength(int cipherLength) throws CryptoException {
+		if(cipherLength < AEAD.XCHACHA20POLY1305_IETF_ABYTES + 1 || cipherLength > cipher.length){
+			throw new CryptoException("Invalid chunk length");
+		}
+		this.cipherLength = cipherLength;
+	}
+
+	/**
+	 * Plaintext of the current chunk. Only the first {@link #getPlainLength} bytes are valid
+	 * and the content is overwritten by the next chunk.
+	 */
+	public byte[] getPlain(){
+		return plain;
+	}
+
+	public int getPlainLength(){
+		return plainLength;
+	}
+
+	public void setPlainLength(int plainLength){
+		if(plainLength < 0 || plainLength > chunkSize){
+			throw new IllegalArgumentException("Invalid plaintext length");
+		}
+		this.plainLength = plainLength;
+	}
+}
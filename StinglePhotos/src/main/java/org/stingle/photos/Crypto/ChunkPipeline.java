@@ -0,0 +1,272 @@
+package org.stingle.photos.Crypto;
+
+import android.os.AsyncTask;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs chunk by chunk crypto operations on several cores while keeping the output in order.
+ *
+ * A reader thread slices the input into chunks and hands them to a bounded worker pool,
+ * the calling thread waits for the chunks in the order they were read and writes them out.
+ * Every chunk of a Stingle file has its own key and nonce, so chunks can be processed independently.
+ */
+public class ChunkPipeline {
+
+	private static final int MAX_IN_FLIGHT_BYTES = 1024 * 1024 * 16;
+	private static final long QUEUE_POLL_MS = 100;
+
+	private static ExecutorService workerPool;
+	private static ExecutorService readerPool;
+
+	public static int getParallelism(){
+		return Math.max(1, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Number of chunks which are allowed to be read ahead of the writer.
+	 *
+	 * @param bytesPerChunk memory held by a single chunk while it is in flight
+	 */
+	public static int getWindowSize(int bytesPerChunk){
+		int byMemory = MAX_IN_FLIGHT_BYTES / Math.max(1, bytesPerChunk);
+		return Math.max(2, Math.min(getParallelism() * 2, byMemory));
+	}
+
+	protected static synchronized ExecutorService getWorkerPool(){
+		if(workerPool == null){
+			workerPool = Executors.newFixedThreadPool(getParallelism(), getThreadFactory("ChunkWorker"));
+		}
+		return workerPool;
+	}
+
+	protected static synchronized ExecutorService getReaderPool(){
+		if(readerPool == null){
+			readerPool = Executors.newCachedThreadPool(getThreadFactory("ChunkReader"));
+		}
+		return readerPool;
+	}
+
+	private static ThreadFactory getThreadFactory(final String name){
+		final AtomicInteger count = new AtomicInteger(1);
+		return runnable -> {
+			Thread thread = new Thread(runnable, name + "-" + count.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	/**
+	 * Reads until the buffer is full or the stream ends.
+	 *
+	 * @return number of bytes read or -1 if the stream ended before the first byte
+	 */
+	public static int readFully(InputStream in, byte[] buf, int offset, int length) throws IOException {
+		int total = 0;
+		while (total < length) {
+			int numRead = in.read(buf, offset + total, length - total);
+			if(numRead < 0){
+				break;
+			}
+			total += numRead;
+		}
+		if(total == 0 && length > 0){
+			return -1;
+		}
+		return total;
+	}
+
+	public static void run(final ChunkReader reader, final ChunkProcessor processor, ChunkWriter writer, int window, CryptoProgress progress, AsyncTask<?,?,?> task) throws IOException, CryptoException {
+		final ExecutorService workers = getWorkerPool();
+		final BlockingQueue<Future<Chunk>> queue = new ArrayBlockingQueue<>(window);
+		final AtomicBoolean stopped = new AtomicBoolean(false);
+
+		Future<?> readerFuture = getReaderPool().submit(() -> {
+			int chunkNumber = 1;
+			try {
+				while (!stopped.get()) {
+					final Chunk chunk = reader.read(chunkNumber);
+					if(chunk == null){
+						enqueue(queue, getCompleted(null), stopped);
+						return;
+					}
+					Future<Chunk> future = workers.submit(() -> {
+						processor.process(chunk);
+						return chunk;
+					});
+					if(!enqueue(queue, future, stopped)){
+						return;
+					}
+					chunkNumber++;
+				}
+			}
+			catch (Exception e){
+				enqueue(queue, getFailed(e), stopped);
+			}
+		});
+
+		long totalRead = 0;
+		try {
+			while (true) {
+				Chunk chunk;
+				try {
+					chunk = queue.take().get();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Chunk pipeline interrupted");
+				}
+				catch (ExecutionException e) {
+					rethrow(e.getCause());
+					return;
+				}
+
+				if(chunk == null){
+					break;
+				}
+
+				writer.write(chunk);
+				chunk.codec.recycle();
+
+				if(progress != null){
+					totalRead += chunk.inputLength;
+					progress.setProgress(totalRead);
+				}
+				if(task != null){
+					if(task.isCancelled()){
+						break;
+					}
+				}
+			}
+		}
+		finally {
+			stopped.set(true);
+			waitQuietly(readerFuture);
+			Future<Chunk> pending;
+			while ((pending = queue.poll()) != null) {
+				if(!pending.cancel(false)){
+					recycleQuietly(pending);
+				}
+			}
+		}
+	}
+
+	private static boolean enqueue(BlockingQueue<Future<Chunk>> queue, Future<Chunk> future, AtomicBoolean stopped){
+		try {
+			while (!stopped.get()) {
+				if(queue.offer(future, QUEUE_POLL_MS, TimeUnit.MILLISECONDS)){
+					return true;
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		future.cancel(false);
+		return false;
+	}
+
+	private static void waitQuietly(Future<?> future){
+		boolean interrupted = false;
+		while (true) {
+			try {
+				future.get();
+				break;
+			}
+			catch (InterruptedException e) {
+				interrupted = true;
+			}
+			catch (ExecutionException e) {
+				break;
+			}
+		}
+		if(interrupted){
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void recycleQuietly(Future<Chunk> future){
+		try {
+			Chunk chunk = future.get();
+			if(chunk != null){
+				chunk.codec.recycle();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException | CancellationException ignored) { }
+	}
+
+	private static Future<Chunk> getCompleted(final Chunk chunk){
+		FutureTask<Chunk> future = new FutureTask<>(() -> chunk);
+		future.run();
+		return future;
+	}
+
+	private static Future<Chunk> getFailed(final Exception e){
+		FutureTask<Chunk> future = new FutureTask<>(() -> {
+			throw e;
+		});
+		future.run();
+		return future;
+	}
+
+	private static void rethrow(Throwable cause) throws IOException, CryptoException {
+		if(cause instanceof IOException){
+			throw (IOException) cause;
+		}
+		if(cause instanceof CryptoException){
+			throw (CryptoException) cause;
+		}
+		if(cause instanceof RuntimeException){
+			throw (RuntimeException) cause;
+		}
+		if(cause instanceof Error){
+			throw (Error) cause;
+		}
+		throw new CryptoException("Chunk processing failed: " + cause);
+	}
+
+	public static class Chunk {
+		public final int number;
+		public final ChunkCodec codec;
+		public final int inputLength;
+
+		public Chunk(int number, ChunkCodec codec, int inputLength){
+			this.number = number;
+			this.codec = codec;
+			this.inputLength = inputLength;
+		}
+	}
+
+	public interface ChunkReader {
+		/**
+		 * @return next chunk or null when there is nothing left to read.
+		 * The codec of the chunk is recycled by the pipeline once the chunk is written.
+		 */
+		Chunk read(int chunkNumber) throws IOException, CryptoException;
+	}
+
+	public interface ChunkProcessor {
+		void process(Chunk chunk) throws CryptoException;
+	}
+
+	public interface ChunkWriter {
+		void write(Chunk chunk) throws IOException;
+	}
+}
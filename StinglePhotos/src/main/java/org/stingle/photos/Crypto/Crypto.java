@@ -1,5 +1,6 @@
 package org.stingle.photos.Crypto;
 
+import android.app.ActivityManager;
 import android.content.Context;
 import android.os.AsyncTask;
 
@@ -45,6 +46,7 @@ public class Crypto {
     protected static final int CURRENT_ALBUM_METADATA_VERSION = 1;
 
     protected static final String PWD_SALT_FILENAME = "pwdSalt";
+    protected static final String PWD_PARAMS_FILENAME = "pwdParams";
     protected static final String SK_NONCE_FILENAME = "skNonce";
     protected static final String PRIVATE_KEY_FILENAME = "private";
     protected static final String PUBLIC_KEY_FILENAME = "public";
@@ -80,9 +82,14 @@ public class Crypto {
     public static final int KDF_DIFFICULTY_HARD = 2;
     public static final int KDF_DIFFICULTY_ULTRA = 3;
 
+    public static final long KDF_CALIBRATION_TARGET_MS = 1000;
+    protected static final long KDF_MAX_OPSLIMIT = 16;
+    protected static final int KDF_PARAMS_LEN = 16;
+
     public static final int PWHASH_LEN = 64;
 
     protected int bufSize = 1024 * 1024;
+    protected boolean parallelChunks = true;
 
 
     public Crypto(Context context){
@@ -95,6 +102,13 @@ public class Crypto {
     }
 
     public void generateMainKeypair(String password, byte[] privateKey, byte[] publicKey) throws CryptoException{
+        generateMainKeypair(password, privateKey, publicKey, null);
+    }
+
+    /**
+     * @param kdfParams password derivation parameters for unlocking the key on this device, null to use the defaults
+     */
+    public void generateMainKeypair(String password, byte[] privateKey, byte[] publicKey, KdfParams kdfParams) throws CryptoException{
 
         // Generate key derivation salt and save it
         byte[] pwdSalt = new byte[PwHash.ARGON2ID_SALTBYTES];
@@ -109,7 +123,7 @@ public class Crypto {
         }
 
         // Derive symmetric encryption key from password
-        byte[] pwdKey = getKeyFromPassword(password, KDF_DIFFICULTY_NORMAL);
+        byte[] pwdKey = getKeyFromPassword(password, (kdfParams != null ? kdfParams : getDefaultKdfParams(KDF_DIFFICULTY_NORMAL)));
 
         // Generate random nonce, save it and encrypt private key
         byte[] pwdEncNonce = new byte[SecretBox.NONCEBYTES];
@@ -120,6 +134,17 @@ public class Crypto {
         // Save public and private keys
         savePrivateFile(PRIVATE_KEY_FILENAME, encryptedPrivateKey);
         savePrivateFile(PUBLIC_KEY_FILENAME, publicKey);
+
+        // Saved last, so a failure above doesn't leave parameters which don't match the saved key
+        saveKdfParams(kdfParams);
+    }
+
+    /**
+     * Enables or disables processing of several chunks at once on multi-core devices.
+     * The resulting files are the same in both modes.
+     */
+    public void setParallelChunks(boolean parallelChunks){
+        this.parallelChunks = parallelChunks;
     }
 
     public byte[] getPrivateKey(String password) throws CryptoException{
@@ -167,12 +192,22 @@ public class Crypto {
     }
 
     public byte[] getPrivateKeyFromExportedKey(String password, byte[] encPrivKey) throws CryptoException{
+        return getPrivateKeyFromExportedKey(password, encPrivKey, getDefaultKdfParams(KDF_DIFFICULTY_NORMAL));
+    }
+
+    /**
+     * @param kdfParams password derivation parameters for unlocking the key on this device
+     */
+    public byte[] getPrivateKeyFromExportedKey(String password, byte[] encPrivKey, KdfParams kdfParams) throws CryptoException{
         byte[] nonce = readPrivateFile(SK_NONCE_FILENAME);
         byte[] decPrivKey = decryptSymmetric(getKeyFromPassword(password, KDF_DIFFICULTY_HARD), nonce, encPrivKey);
 
-        return encryptSymmetric(getKeyFromPassword(password, KDF_DIFFICULTY_NORMAL), nonce, decPrivKey);
+        return encryptSymmetric(getKeyFromPassword(password, kdfParams), nonce, decPrivKey);
     }
 
+    /**
+     * The exported private key is always encrypted with the hard defaults, so every client can import the bundle
+     */
     public byte[] exportKeyBundle(String password) throws IOException, CryptoException {
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         out.write(KEY_FILE_BEGGINING.getBytes());
@@ -199,6 +234,14 @@ public class Crypto {
     }
 
     public void importKeyBundle(byte[] keys, String password) throws IOException, CryptoException {
+        importKeyBundle(keys, password, null);
+    }
+
+    /**
+     * @param kdfParams password derivation parameters for unlocking the imported key on this device, null to use the defaults.
+     *                  They are saved only after the key was imported.
+     */
+    public void importKeyBundle(byte[] keys, String password, KdfParams kdfParams) throws IOException, CryptoException {
         ByteArrayInputStream in = new ByteArrayInputStream(keys);
 
         byte[] fileBeginning = new byte[KEY_FILE_BEGGINIG_LEN];
@@ -232,7 +275,8 @@ public class Crypto {
             savePrivateFile(PUBLIC_KEY_FILENAME, publicKey);
             savePrivateFile(PWD_SALT_FILENAME, pwdSalt);
             savePrivateFile(SK_NONCE_FILENAME, skNonce);
-            savePrivateFile(PRIVATE_KEY_FILENAME, getPrivateKeyFromExportedKey(password, encryptedPrivateKey));
+            savePrivateFile(PRIVATE_KEY_FILENAME, getPrivateKeyFromExportedKey(password, encryptedPrivateKey, (kdfParams != null ? kdfParams : getDefaultKdfParams(KDF_DIFFICULTY_NORMAL))));
+            saveKdfParams(kdfParams);
         }
         else if(keyFileType == KEY_FILE_TYPE_PUBLIC_PLAIN) {
             byte[] publicKey = new byte[Box.PUBLICKEYBYTES];
@@ -283,12 +327,25 @@ public class Crypto {
     public void deleteKeys(){
         deletePrivateFile(PUBLIC_KEY_FILENAME);
         deletePrivateFile(PWD_SALT_FILENAME);
+        deletePrivateFile(PWD_PARAMS_FILENAME);
         deletePrivateFile(SK_NONCE_FILENAME);
         deletePrivateFile(PRIVATE_KEY_FILENAME);
         deletePrivateFile(SERVER_PUBLIC_KEY_FILENAME);
     }
 
     public byte[] getKeyFromPassword(String password, int difficulty) throws CryptoException{
+        KdfParams params = null;
+        if(difficulty == KDF_DIFFICULTY_NORMAL){
+            params = getKdfParams();
+        }
+        if(params == null){
+            params = getDefaultKdfParams(difficulty);
+        }
+
+        return getKeyFromPassword(password, params);
+    }
+
+    public byte[] getKeyFromPassword(String password, KdfParams params) throws CryptoException{
         byte[] salt = readPrivateFile(PWD_SALT_FILENAME);
         if(salt == null || salt.length != PwHash.ARGON2ID_SALTBYTES){
             throw new CryptoException("Invalid salt for password derivation");
@@ -297,23 +354,99 @@ public class Crypto {
         byte[] key = new byte[SecretBox.KEYBYTES];
         byte[] passwordBytes = password.getBytes();
 
-        long opsLimit = PwHash.OPSLIMIT_INTERACTIVE;
-        NativeLong memlimit = PwHash.MEMLIMIT_INTERACTIVE;
+        if(so.crypto_pwhash(key, key.length, passwordBytes, passwordBytes.length, salt, params.opsLimit, new NativeLong(params.memLimit), PwHash.Alg.PWHASH_ALG_ARGON2ID13.getValue()) != 0){
+            throw new CryptoException("Unable to derive key from password");
+        }
 
+        return key;
+    }
+
+    public KdfParams getDefaultKdfParams(int difficulty){
         switch (difficulty){
             case KDF_DIFFICULTY_HARD:
-                opsLimit = PwHash.OPSLIMIT_MODERATE;
-                memlimit = PwHash.MEMLIMIT_MODERATE;
-                break;
+                return new KdfParams(PwHash.OPSLIMIT_MODERATE, PwHash.MEMLIMIT_MODERATE.longValue());
             case KDF_DIFFICULTY_ULTRA:
-                opsLimit = PwHash.OPSLIMIT_SENSITIVE;
-                memlimit = PwHash.MEMLIMIT_SENSITIVE;
-                break;
+                return new KdfParams(PwHash.OPSLIMIT_SENSITIVE, PwHash.MEMLIMIT_SENSITIVE.longValue());
+            default:
+                return new KdfParams(PwHash.OPSLIMIT_INTERACTIVE, PwHash.MEMLIMIT_INTERACTIVE.longValue());
         }
+    }
 
-        so.crypto_pwhash(key, key.length, passwordBytes, passwordBytes.length, salt, opsLimit, memlimit, PwHash.Alg.PWHASH_ALG_ARGON2ID13.getValue());
+    /**
+     * @return password derivation parameters calibrated for this device or null if the defaults are used
+     */
+    public KdfParams getKdfParams(){
+        byte[] paramsBytes = readPrivateFile(PWD_PARAMS_FILENAME);
+        if(paramsBytes == null || paramsBytes.length != KDF_PARAMS_LEN){
+            return null;
+        }
+        return KdfParams.fromByteArray(paramsBytes);
+    }
 
-        return key;
+    public void saveKdfParams(KdfParams params){
+        if(params == null){
+            deletePrivateFile(PWD_PARAMS_FILENAME);
+            return;
+        }
+        savePrivateFile(PWD_PARAMS_FILENAME, params.toByteArray());
+    }
+
+    /**
+     * Benchmarks Argon2id on this device and picks parameters which take about targetMillis to unlock the key.
+     * The result is never weaker than the normal difficulty and uses at most 1/8 of the device RAM.
+     */
+    public KdfParams calibrateKdfParams(long targetMillis){
+        KdfParams params = getDefaultKdfParams(KDF_DIFFICULTY_NORMAL);
+
+        long time = benchmarkKdf(params);
+        if(time < 0 || time >= targetMillis){
+            return params;
+        }
+
+        // Grow memory first, doubling it roughly doubles the time
+        long maxMemLimit = Math.min(PwHash.MEMLIMIT_MODERATE.longValue(), getTotalDeviceMemory() / 8);
+        long memLimit = params.memLimit;
+        long estimatedTime = time;
+        while (memLimit * 2 <= maxMemLimit && estimatedTime * 2 <= targetMillis / 2) {
+            memLimit *= 2;
+            estimatedTime *= 2;
+        }
+        if(memLimit != params.memLimit){
+            KdfParams biggerParams = new KdfParams(params.opsLimit, memLimit);
+            long biggerTime = benchmarkKdf(biggerParams);
+            if(biggerTime > 0){
+                params = biggerParams;
+                time = biggerTime;
+            }
+        }
+
+        // Then spend the rest of the budget on passes
+        long timePerOp = Math.max(1, time / params.opsLimit);
+        params.opsLimit = Math.max(params.opsLimit, Math.min(KDF_MAX_OPSLIMIT, targetMillis / timePerOp));
+
+        return params;
+    }
+
+    /**
+     * @return milliseconds taken by one derivation or -1 if it failed
+     */
+    protected long benchmarkKdf(KdfParams params){
+        byte[] key = new byte[SecretBox.KEYBYTES];
+        byte[] password = getRandomData(16);
+        byte[] salt = getRandomData(PwHash.ARGON2ID_SALTBYTES);
+
+        long start = System.nanoTime();
+        if(so.crypto_pwhash(key, key.length, password, password.length, salt, params.opsLimit, new NativeLong(params.memLimit), PwHash.Alg.PWHASH_ALG_ARGON2ID13.getValue()) != 0){
+            return -1;
+        }
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    protected long getTotalDeviceMemory(){
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+        activityManager.getMemoryInfo(memoryInfo);
+        return memoryInfo.totalMem;
     }
 
     public HashMap<String, String> getPasswordHashForStorage(String password){
@@ -715,39 +848,35 @@ public class Crypto {
             throw new CryptoException("Key is empty");
         }
 
+        if(isParallelChunksAllowed(header)){
+            return encryptDataParallel(in, out, header, progress, task);
+        }
+
         long totalRead = 0;
 
         int numRead = 0;
         int chunkNumber = 1;
-        byte[] buf = new byte[header.chunkSize];
-
-        byte[] chunkKey = new byte[AEAD.XCHACHA20POLY1305_IETF_KEYBYTES];
-        byte[] chunkNonce = new byte[AEAD.XCHACHA20POLY1305_IETF_NPUBBYTES];
-        byte[] contextBytes = XCHACHA20POLY1305_IETF_CONTEXT.getBytes();
-
-        while ((numRead = in.read(buf)) >= 0) {
-            so.randombytes_buf(chunkNonce, chunkNonce.length);
-            so.crypto_kdf_derive_from_key(chunkKey, chunkKey.length, chunkNumber, contextBytes, header.symmetricKey);
+        ChunkCodec codec = ChunkCodec.obtain(so, header.chunkSize, header.symmetricKey);
 
-            byte[] encBytes = new byte[header.chunkSize + AEAD.XCHACHA20POLY1305_IETF_ABYTES];
-            long[] encSize = new long[1];
-            if(so.crypto_aead_xchacha20poly1305_ietf_encrypt(encBytes, encSize, buf, numRead, null, 0, null, chunkNonce, chunkKey) != 0){
-                throw new CryptoException("Error when encrypting data.");
-            }
-
-            out.write(chunkNonce);
-            out.write(encBytes, 0, (int)encSize[0]);
+        try {
+            while ((numRead = codec.readPlain(in)) >= 0) {
+                codec.encrypt(chunkNumber);
+                codec.writeFrame(out);
 
-            if(progress != null){
-                totalRead += numRead;
-                progress.setProgress(totalRead);
-            }
-            if(task != null){
-                if(task.isCancelled()){
-                    break;
+                if(progress != null){
+                    totalRead += numRead;
+                    progress.setProgress(totalRead);
                 }
+                if(task != null){
+                    if(task.isCancelled()){
+                        break;
+                    }
+                }
+                chunkNumber++;
             }
-            chunkNumber++;
+        }
+        finally {
+            codec.recycle();
         }
 
         out.close();
@@ -755,6 +884,39 @@ public class Crypto {
         return true;
     }
 
+    protected boolean isParallelChunksAllowed(Header header){
+        return parallelChunks && ChunkPipeline.getParallelism() > 1 && header.dataSize > header.chunkSize;
+    }
+
+    protected boolean encryptDataParallel(InputStream in, OutputStream out, Header header, CryptoProgress progress, AsyncTask<?,?,?> task) throws IOException, CryptoException {
+        int codecSize = header.chunkSize * 2 + AEAD.XCHACHA20POLY1305_IETF_ABYTES;
+
+        try {
+            ChunkPipeline.run(
+                    chunkNumber -> {
+                        ChunkCodec codec = ChunkCodec.obtain(so, header.chunkSize, header.symmetricKey);
+                        int numRead = codec.readPlain(in);
+                        if(numRead < 0){
+                            codec.recycle();
+                            return null;
+                        }
+                        return new ChunkPipeline.Chunk(chunkNumber, codec, numRead);
+                    },
+                    chunk -> chunk.codec.encrypt(chunk.number),
+                    chunk -> chunk.codec.writeFrame(out),
+                    ChunkPipeline.getWindowSize(codecSize),
+                    progress,
+                    task
+            );
+        }
+        finally {
+            out.close();
+            in.close();
+        }
+
+        return true;
+    }
+
     protected boolean decryptData(InputStream in, OutputStream out, Header header) throws IOException, CryptoException {
         return decryptData(in, out, header, null, null);
     }
@@ -764,49 +926,128 @@ public class Crypto {
             throw new CryptoException("Invalid chunk size");
         }
 
+        if(isParallelChunksAllowed(header)){
+            return decryptDataParallel(in, out, header, progress, task);
+        }
+
         int numRead = 0;
         long totalRead = 0;
-
-        byte[] bufIn = new byte[AEAD.XCHACHA20POLY1305_IETF_NPUBBYTES + header.chunkSize + AEAD.XCHACHA20POLY1305_IETF_ABYTES];
-        byte[] encChunkBytes = new byte[header.chunkSize + AEAD.XCHACHA20POLY1305_IETF_ABYTES];
-
         int chunkNumber = 1;
-        byte[] chunkKey = new byte[AEAD.XCHACHA20POLY1305_IETF_KEYBYTES];
-        byte[] chunkNonce = new byte[AEAD.XCHACHA20POLY1305_IETF_NPUBBYTES];
-        byte[] contextBytes = XCHACHA20POLY1305_IETF_CONTEXT.getBytes();
+        ChunkCodec codec = ChunkCodec.obtain(so, header.chunkSize, header.symmetricKey);
 
+        try {
+            while ((numRead = codec.readFrame(in)) >= 0) {
+                codec.decrypt(chunkNumber);
+                codec.writePlain(out);
 
-        while ((numRead = in.read(bufIn)) >= 0) {
-            if(numRead < AEAD.XCHACHA20POLY1305_IETF_NPUBBYTES + AEAD.XCHACHA20POLY1305_IETF_ABYTES + 1){
-                throw new CryptoException("Invalid chunk length");
-            }
-            chunkNonce = Arrays.copyOfRange(bufIn, 0, AEAD.XCHACHA20POLY1305_IETF_NPUBBYTES);
-            encChunkBytes = Arrays.copyOfRange(bufIn, AEAD.XCHACHA20POLY1305_IETF_NPUBBYTES, numRead);
-            so.crypto_kdf_derive_from_key(chunkKey, chunkKey.length, chunkNumber, contextBytes, header.symmetricKey);
-
-            byte[] decBytes = new byte[header.chunkSize];
-            long[] decSize = new long[1];
-            if(so.crypto_aead_xchacha20poly1305_ietf_decrypt(decBytes, decSize, null, encChunkBytes, encChunkBytes.length, null, 0, chunkNonce, chunkKey) != 0){
-                throw new CryptoException("Error when decrypting data.");
+                if(progress != null){
+                    totalRead += numRead;
+                    progress.setProgress(totalRead);
+                }
+                if(task != null){
+                    if(task.isCancelled()){
+                        break;
+                    }
+                }
+
+                chunkNumber++;
             }
+        }
+        finally {
+            codec.recycle();
+        }
+
+        out.close();
+        in.close();
+
+        return true;
+    }
 
-            out.write(decBytes, 0, (int)decSize[0]);
+    protected boolean decryptDataParallel(InputStream in, OutputStream out, Header header, CryptoProgress progress, AsyncTask<?,?,?> task) throws IOException, CryptoException {
+        int codecSize = header.chunkSize * 2 + AEAD.XCHACHA20POLY1305_IETF_ABYTES;
 
-            if(progress != null){
-                totalRead += numRead;
-                progress.setProgress(totalRead);
+        try {
+            ChunkPipeline.run(
+                    chunkNumber -> {
+                        ChunkCodec codec = ChunkCodec.obtain(so, header.chunkSize, header.symmetricKey);
+                        int numRead;
+                        try {
+                            numRead = codec.readFrame(in);
+                        }
+                        catch (CryptoException e){
+                            codec.recycle();
+                            throw e;
+                        }
+                        if(numRead < 0){
+                            codec.recycle();
+                            return null;
+                        }
+                        return new ChunkPipeline.Chunk(chunkNumber, codec, numRead);
+                    },
+                    chunk -> chunk.codec.decrypt(chunk.number),
+                    chunk -> chunk.codec.writePlain(out),
+                    ChunkPipeline.getWindowSize(codecSize),
+                    progress,
+                    task
+            );
+        }
+        finally {
+            out.close();
+            in.close();
+        }
+
+        return true;
+    }
+
+    /**
+     * Authenticates every chunk of an encrypted file without writing out any plaintext.
+     * Throws CryptoException on the first chunk which does not authenticate and SizeMismatchException
+     * if all chunks authenticate but the data is shorter or longer than the header says.
+     *
+     * @return false if the task was cancelled before the whole file was verified
+     */
+    public boolean verifyFile(InputStream in, Header header, AsyncTask<?,?,?> task) throws IOException, CryptoException {
+        try {
+            if (header == null) {
+                header = getFileHeader(in);
+            }
+            else {
+                getOverallHeaderSize(in, false);
+            }
+            if (header.chunkSize < 1 || header.chunkSize > MAX_BUFFER_LENGTH) {
+                throw new CryptoException("Invalid chunk size");
             }
-            if(task != null){
-                if(task.isCancelled()){
-                    break;
+
+            long totalPlain = 0;
+            long chunkNumber = 1;
+            ChunkCodec codec = ChunkCodec.obtain(so, header.chunkSize, header.symmetricKey);
+            try {
+                while (codec.readFrame(in) >= 0) {
+                    try {
+                        codec.decrypt(chunkNumber);
+                    }
+                    catch (CryptoException e) {
+                        throw new CryptoException("Chunk " + chunkNumber + " failed authentication");
+                    }
+                    totalPlain += codec.getPlainLength();
+
+                    if (task != null && task.isCancelled()) {
+                        return false;
+                    }
+                    chunkNumber++;
                 }
             }
+            finally {
+                codec.recycle();
+            }
 
-            chunkNumber++;
+            if (totalPlain != header.dataSize) {
+                throw new SizeMismatchException("Data size " + totalPlain + " does not match the header " + header.dataSize);
+            }
+        }
+        finally {
+            in.close();
         }
-
-        out.close();
-        in.close();
 
         return true;
     }
@@ -971,6 +1212,24 @@ public class Crypto {
         return getFileHeader(headers.thumb, privateKey, publicKey);
     }
 
+    /**
+     * Reads the file id from the unencrypted beginning of a file, no key is needed
+     */
+    public static byte[] readFileId(InputStream in) throws IOException, CryptoException {
+        byte[] fileBeginning = new byte[FILE_BEGGINIG_LEN];
+        if (in.read(fileBeginning) != FILE_BEGGINIG_LEN || !new String(fileBeginning, "UTF-8").equals(FILE_BEGGINING)) {
+            throw new CryptoException("Invalid file header, not our file");
+        }
+        if (in.read() != CURRENT_FILE_VERSION) {
+            throw new CryptoException("Unsupported version number");
+        }
+        byte[] fileId = new byte[FILE_FILE_ID_LEN];
+        if (in.read(fileId) != FILE_FILE_ID_LEN) {
+            throw new CryptoException("Invalid file id");
+        }
+        return fileId;
+    }
+
     public static int getOverallHeaderSize(InputStream in) throws IOException, CryptoException {
         return getOverallHeaderSize(in, true);
     }
@@ -1160,6 +1419,25 @@ public class Crypto {
 
         public int overallHeaderSize = 0;
 
+        /**
+         * Copy which doesn't share the arrays with this header
+         */
+        public Header copy(){
+            Header copy = new Header();
+            copy.fileVersion = fileVersion;
+            copy.fileId = (fileId != null ? fileId.clone() : null);
+            copy.headerSize = headerSize;
+            copy.headerVersion = headerVersion;
+            copy.chunkSize = chunkSize;
+            copy.dataSize = dataSize;
+            copy.symmetricKey = (symmetricKey != null ? symmetricKey.clone() : null);
+            copy.fileType = fileType;
+            copy.filename = filename;
+            copy.videoDuration = videoDuration;
+            copy.overallHeaderSize = overallHeaderSize;
+            return copy;
+        }
+
         public String toString(){
             return "\n" +
                     "File Version - " + String.valueOf(fileVersion) + "\n" +
@@ -1178,6 +1456,37 @@ public class Crypto {
         }
     }
 
+    /**
+     * The data authenticates but its size differs from the one in the header, e.g. the size of an import was not known in advance
+     */
+    public static class SizeMismatchException extends CryptoException {
+        public SizeMismatchException(String string) {
+            super(string);
+        }
+    }
+
+    public static class KdfParams {
+        public long opsLimit;
+        public long memLimit;
+
+        public KdfParams(long opsLimit, long memLimit){
+            this.opsLimit = opsLimit;
+            this.memLimit = memLimit;
+        }
+
+        public byte[] toByteArray(){
+            ByteBuffer buffer = ByteBuffer.allocate(KDF_PARAMS_LEN);
+            buffer.putLong(opsLimit);
+            buffer.putLong(memLimit);
+            return buffer.array();
+        }
+
+        public static KdfParams fromByteArray(byte[] bytes){
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            return new KdfParams(buffer.getLong(), buffer.getLong());
+        }
+    }
+
     public static class AlbumData {
         public byte[] publicKey;
         public byte[] privateKey;
@@ -4,8 +4,6 @@ import android.content.Context;
 import android.os.AsyncTask;
 
 import org.json.JSONObject;
-import org.stingle.photos.Db.Objects.StingleDbAlbum;
-import org.stingle.photos.Db.Query.AlbumsDb;
 import org.stingle.photos.StinglePhotosApplication;
 import org.stingle.photos.Sync.SyncManager;
 
@@ -70,38 +68,22 @@ public class CryptoHelpers {
 
 	public static void decryptDbFile(Context context, int set, String albumId, String headers, boolean isThumb, InputStream in, OutputStream out, CryptoProgress progress, AsyncTask<?,?,?> task) throws IOException, CryptoException {
 		Crypto crypto = StinglePhotosApplication.getCrypto();
-		Crypto.Header header = null;
-		if(set == SyncManager.ALBUM){
-			AlbumsDb albumsDb = new AlbumsDb(context);
-			StingleDbAlbum dbAlbum = albumsDb.getAlbumById(albumId);
-			Crypto.AlbumData albumData = crypto.parseAlbumData(dbAlbum.publicKey, dbAlbum.encPrivateKey, dbAlbum.metadata);
-
-			if(isThumb) {
-				header = crypto.getThumbHeaderFromHeadersStr(headers, albumData.privateKey, albumData.publicKey);
-			}
-			else{
-				header = crypto.getFileHeaderFromHeadersStr(headers, albumData.privateKey, albumData.publicKey);
-			}
-		}
-		else {
-			if(isThumb) {
-				header = crypto.getThumbHeaderFromHeadersStr(headers);
-			}
-			else{
-				header = crypto.getFileHeaderFromHeadersStr(headers);
-			}
-		}
+		Crypto.Header header = decryptFileHeaders(context, set, albumId, headers, isThumb);
 
 		crypto.decryptFile(in, out, progress, task, header);
 	}
 
 	public static Crypto.Header decryptFileHeaders(Context context, int set, String albumId, String headers, boolean isThumb) throws IOException, CryptoException {
+		HeaderCache headerCache = StinglePhotosApplication.getHeaderCache();
+		String cacheKey = HeaderCache.getCacheKey(headers, (set == SyncManager.ALBUM ? albumId : HeaderCache.KEY_MAIN), isThumb);
+		Crypto.Header header = headerCache.get(cacheKey);
+		if(header != null){
+			return header;
+		}
+
 		Crypto crypto = StinglePhotosApplication.getCrypto();
-		Crypto.Header header = null;
 		if(set == SyncManager.ALBUM){
-			AlbumsDb albumsDb = new AlbumsDb(context);
-			StingleDbAlbum dbAlbum = albumsDb.getAlbumById(albumId);
-			Crypto.AlbumData albumData = crypto.parseAlbumData(dbAlbum.publicKey, dbAlbum.encPrivateKey, dbAlbum.metadata);
+			Crypto.AlbumData albumData = StinglePhotosApplication.getAlbumKeyring().get(context, albumId);
 
 			if(isThumb) {
 				header = crypto.getThumbHeaderFromHeadersStr(headers, albumData.privateKey, albumData.publicKey);
@@ -119,6 +101,8 @@ public class CryptoHelpers {
 			}
 		}
 
+		headerCache.put(cacheKey, header);
+
 		return header;
 	}
 
@@ -0,0 +1,217 @@
+package org.stingle.photos.Crypto;
+
+import com.goterl.lazycode.lazysodium.SodiumAndroid;
+import com.goterl.lazycode.lazysodium.interfaces.AEAD;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Random access reader over a local encrypted Stingle file.
+ *
+ * Reads are served from the plaintext coordinates of the file and only the chunks
+ * which overlap the requested range are decrypted. The last decrypted chunk is kept,
+ * so sequential small reads decrypt every chunk once.
+ */
+public class DecryptingFileChannel implements ReadableByteChannel {
+
+	private final SodiumAndroid so;
+	private final Crypto.Header header;
+	private final long headerSize;
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long fileSize;
+
+	private ChunkCodec codec;
+	private long loadedChunkNumber = -1;
+	private long position = 0;
+
+	public DecryptingFileChannel(Crypto crypto, File encFile) throws IOException, CryptoException {
+		this(crypto, encFile, null);
+	}
+
+	/**
+	 * @param header already decrypted header of the file or null to read it from the file
+	 */
+	public DecryptingFileChannel(Crypto crypto, File encFile, Crypto.Header header) throws IOException, CryptoException {
+		if(header == null){
+			try (FileInputStream in = new FileInputStream(encFile)) {
+				header = crypto.getFileHeader(in);
+			}
+		}
+
+		// The header can be shared with other readers, so its size is kept here instead of being written to it
+		if(header.overallHeaderSize > 0){
+			this.headerSize = header.overallHeaderSize;
+		}
+		else {
+			try (FileInputStream in = new FileInputStream(encFile)) {
+				this.headerSize = Crypto.getOverallHeaderSize(in);
+			}
+		}
+
+		this.so = new SodiumAndroid();
+		this.header = header;
+		this.file = new RandomAccessFile(encFile, "r");
+		try {
+			this.channel = file.getChannel();
+			this.fileSize = channel.size();
+			this.codec = ChunkCodec.obtain(so, header.chunkSize, header.symmetricKey);
+		}
+		catch (IOException | CryptoException | RuntimeException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Size of one nonce + ciphertext + tag frame.
+	 */
+	public static int getFrameSize(Crypto.Header header){
+		return AEAD.XCHACHA20POLY1305_IETF_NPUBBYTES + header.chunkSize + AEAD.XCHACHA20POLY1305_IETF_ABYTES;
+	}
+
+	/**
+	 * Offset of the given chunk in the encrypted file, chunk numbers start from 1.
+	 */
+	public static long getFrameOffset(Crypto.Header header, long chunkNumber){
+		return getFrameOffset(header, header.overallHeaderSize, chunkNumber);
+	}
+
+	private static long getFrameOffset(Crypto.Header header, long headerSize, long chunkNumber){
+		return headerSize + (chunkNumber - 1) * getFrameSize(header);
+	}
+
+	public Crypto.Header getHeader(){
+		return header;
+	}
+
+	/**
+	 * Size of the decrypted data.
+	 */
+	public long size(){
+		return header.dataSize;
+	}
+
+	public synchronized long position(){
+		return position;
+	}
+
+	public synchronized DecryptingFileChannel position(long newPosition){
+		if(newPosition < 0){
+			throw new IllegalArgumentException("Negative position");
+		}
+		position = newPosition;
+		return this;
+	}
+
+	@Override
+	public synchronized int read(ByteBuffer dst) throws IOException {
+		if(dst.hasArray()){
+			int bytesRead = read(position, dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+			if(bytesRead > 0){
+				dst.position(dst.position() + bytesRead);
+				position += bytesRead;
+			}
+			return bytesRead;
+		}
+
+		byte[] buf = new byte[Math.min(dst.remaining(), header.chunkSize)];
+		int bytesRead = read(position, buf, 0, buf.length);
+		if(bytesRead > 0){
+			dst.put(buf, 0, bytesRead);
+			position += bytesRead;
+		}
+		return bytesRead;
+	}
+
+	/**
+	 * Reads decrypted bytes starting from the given plaintext position without changing the channel position.
+	 *
+	 * @return number of bytes read or -1 if the position is at or after the end of the data
+	 */
+	public synchronized int read(long fromPosition, byte[] buffer, int offset, int length) throws IOException {
+		if(!isOpen()){
+			throw new ClosedChannelException();
+		}
+		if(fromPosition >= header.dataSize){
+			return -1;
+		}
+		length = (int) Math.min(length, header.dataSize - fromPosition);
+
+		int bytesRead = 0;
+		while (bytesRead < length) {
+			long currentPosition = fromPosition + bytesRead;
+			long chunkNumber = currentPosition / header.chunkSize + 1;
+			int positionInChunk = (int) (currentPosition % header.chunkSize);
+
+			loadChunk(chunkNumber);
+
+			int available = codec.getPlainLength() - positionInChunk;
+			if(available <= 0){
+				throw new EOFException("Encrypted file is shorter than its header says");
+			}
+			int toCopy = Math.min(available, length - bytesRead);
+			System.arraycopy(codec.getPlain(), positionInChunk, buffer, offset + bytesRead, toCopy);
+			bytesRead += toCopy;
+		}
+
+		return bytesRead;
+	}
+
+	private void loadChunk(long chunkNumber) throws IOException {
+		if(loadedChunkNumber == chunkNumber){
+			return;
+		}
+		loadedChunkNumber = -1;
+
+		long frameOffset = getFrameOffset(header, headerSize, chunkNumber);
+		long cipherOffset = frameOffset + AEAD.XCHACHA20POLY1305_IETF_NPUBBYTES;
+		int cipherLength = (int) Math.min(codec.getCipher().length, fileSize - cipherOffset);
+
+		try {
+			readFully(ByteBuffer.wrap(codec.getNonce()), frameOffset);
+			readFully(ByteBuffer.wrap(codec.getCipher(), 0, Math.max(0, cipherLength)), cipherOffset);
+			codec.setCipherLength(cipherLength);
+			codec.decrypt(chunkNumber);
+		}
+		catch (CryptoException e) {
+			throw new IOException("Unable to decrypt chunk " + chunkNumber, e);
+		}
+
+		loadedChunkNumber = chunkNumber;
+	}
+
+	private void readFully(ByteBuffer buf, long offset) throws IOException {
+		while (buf.hasRemaining()) {
+			int numRead = channel.read(buf, offset);
+			if(numRead < 0){
+				throw new EOFException("Unexpected end of encrypted file");
+			}
+			offset += numRead;
+		}
+	}
+
+	@Override
+	public synchronized boolean isOpen() {
+		return codec != null;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if(codec == null){
+			return;
+		}
+		codec.recycle();
+		codec = null;
+		loadedChunkNumber = -1;
+		file.close();
+	}
+}
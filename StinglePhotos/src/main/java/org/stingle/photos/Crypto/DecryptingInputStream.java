@@ -0,0 +1,145 @@
+package org.stingle.photos.Crypto;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decrypts a Stingle file while it is being read, keeping only one chunk in memory.
+ *
+ * The header is parsed on the first read. If the decrypted header is already known
+ * (for example from the headers stored in the DB) it can be passed in and is only skipped in the stream.
+ */
+public class DecryptingInputStream extends InputStream {
+
+	private final Crypto crypto;
+	private final InputStream in;
+	private final byte[] privateKey;
+	private final byte[] publicKey;
+
+	private Crypto.Header header;
+	private boolean headerRead = false;
+	private ChunkCodec codec;
+	private long chunkNumber = 1;
+	private int positionInChunk = 0;
+	private boolean eof = false;
+	private boolean closed = false;
+
+	public DecryptingInputStream(Crypto crypto, InputStream in) {
+		this(crypto, in, null, null, null);
+	}
+
+	public DecryptingInputStream(Crypto crypto, InputStream in, Crypto.Header header) {
+		this(crypto, in, header, null, null);
+	}
+
+	/**
+	 * @param header decrypted header of the file or null to read it from the stream with the given keys
+	 */
+	public DecryptingInputStream(Crypto crypto, InputStream in, Crypto.Header header, byte[] privateKey, byte[] publicKey) {
+		this.crypto = crypto;
+		this.in = in;
+		this.header = header;
+		this.privateKey = privateKey;
+		this.publicKey = publicKey;
+	}
+
+	public Crypto.Header getHeader() throws IOException {
+		readHeaderIfNeeded();
+		return header;
+	}
+
+	private void readHeaderIfNeeded() throws IOException {
+		if(headerRead){
+			return;
+		}
+		if(closed){
+			throw new IOException("Stream closed");
+		}
+		try {
+			if(header == null) {
+				header = crypto.getFileHeader(in, privateKey, publicKey);
+			}
+			else{
+				Crypto.getOverallHeaderSize(in, false);
+			}
+			codec = ChunkCodec.obtain(crypto.so, header.chunkSize, header.symmetricKey);
+		}
+		catch (CryptoException e) {
+			throw new IOException("Unable to read file header", e);
+		}
+		headerRead = true;
+	}
+
+	private boolean fillChunk() throws IOException {
+		if(eof){
+			return false;
+		}
+		if(positionInChunk < codec.getPlainLength()){
+			return true;
+		}
+
+		try {
+			if(codec.readFrame(in) < 0){
+				eof = true;
+				return false;
+			}
+			codec.decrypt(chunkNumber);
+		}
+		catch (CryptoException e) {
+			throw new IOException("Unable to decrypt chunk " + chunkNumber, e);
+		}
+		chunkNumber++;
+		positionInChunk = 0;
+
+		return true;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		int numRead = read(b, 0, 1);
+		return numRead < 0 ? -1 : (b[0] & 0xff);
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if(closed){
+			throw new IOException("Stream closed");
+		}
+		if(len == 0){
+			return 0;
+		}
+		readHeaderIfNeeded();
+
+		int totalRead = 0;
+		while (totalRead < len && fillChunk()) {
+			int toCopy = Math.min(len - totalRead, codec.getPlainLength() - positionInChunk);
+			System.arraycopy(codec.getPlain(), positionInChunk, b, off + totalRead, toCopy);
+			positionInChunk += toCopy;
+			totalRead += toCopy;
+		}
+
+		return totalRead == 0 ? -1 : totalRead;
+	}
+
+	@Override
+	public int available() throws IOException {
+		if(!headerRead || closed){
+			return 0;
+		}
+		return codec.getPlainLength() - positionInChunk;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(closed){
+			return;
+		}
+		closed = true;
+		if(codec != null){
+			codec.recycle();
+			codec = null;
+		}
+		in.close();
+	}
+}
@@ -0,0 +1,165 @@
+package org.stingle.photos.Crypto;
+
+import com.goterl.lazycode.lazysodium.interfaces.KeyDerivation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Encrypts everything written to it into the Stingle file format, chunk by chunk.
+ *
+ * The header is written together with the first chunk. If the size of the data is not known
+ * in advance pass {@link #DATA_SIZE_UNKNOWN}, in that case the target has to be a {@link FileOutputStream}
+ * positioned at the beginning of the file and the header is rewritten with the real size on close.
+ * The output is identical to {@link Crypto#encryptFile}.
+ */
+public class EncryptingOutputStream extends OutputStream {
+
+	public static final long DATA_SIZE_UNKNOWN = -1;
+
+	private final Crypto crypto;
+	private final OutputStream out;
+	private final Crypto.Header header;
+	private final byte[] publicKey;
+	private final boolean sizeKnown;
+
+	private ChunkCodec codec;
+	private long chunkNumber = 1;
+	private long totalWritten = 0;
+	private boolean headerWritten = false;
+	private boolean closed = false;
+
+	public EncryptingOutputStream(Crypto crypto, OutputStream out, String filename, int fileType, long dataSize, byte[] fileId, int videoDuration) throws IOException, CryptoException {
+		this.sizeKnown = dataSize != DATA_SIZE_UNKNOWN;
+		if(!sizeKnown && !(out instanceof FileOutputStream)){
+			throw new IllegalArgumentException("Unknown data size needs a file output");
+		}
+
+		byte[] symmetricKey = new byte[KeyDerivation.MASTER_KEY_BYTES];
+		crypto.so.crypto_kdf_keygen(symmetricKey);
+
+		if(fileId == null) {
+			fileId = crypto.getNewFileId();
+		}
+
+		this.crypto = crypto;
+		this.out = out;
+		this.publicKey = crypto.readPrivateFile(Crypto.PUBLIC_KEY_FILENAME);
+		this.header = crypto.getNewHeader(symmetricKey, (sizeKnown ? dataSize : 0), filename, fileType, fileId, videoDuration);
+		this.codec = ChunkCodec.obtain(crypto.so, header.chunkSize, symmetricKey);
+	}
+
+	public byte[] getFileId(){
+		return header.fileId;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[]{(byte) b}, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if(closed){
+			throw new IOException("Stream closed");
+		}
+		if(sizeKnown && totalWritten + len > header.dataSize){
+			throw new IOException("More data written than declared in the header");
+		}
+
+		while (len > 0) {
+			int plainLength = codec.getPlainLength();
+			int toCopy = Math.min(len, codec.getChunkSize() - plainLength);
+			System.arraycopy(b, off, codec.getPlain(), plainLength, toCopy);
+			codec.setPlainLength(plainLength + toCopy);
+			off += toCopy;
+			len -= toCopy;
+			totalWritten += toCopy;
+
+			if(codec.getPlainLength() == codec.getChunkSize()){
+				writeChunk();
+			}
+		}
+	}
+
+	private void writeHeaderIfNeeded() throws IOException {
+		if(headerWritten){
+			return;
+		}
+		try {
+			crypto.writeHeader(out, header, publicKey);
+		}
+		catch (CryptoException e) {
+			throw new IOException("Unable to write file header", e);
+		}
+		headerWritten = true;
+	}
+
+	private void writeChunk() throws IOException {
+		writeHeaderIfNeeded();
+		try {
+			codec.encrypt(chunkNumber);
+		}
+		catch (CryptoException e) {
+			throw new IOException("Unable to encrypt chunk " + chunkNumber, e);
+		}
+		codec.writeFrame(out);
+		codec.setPlainLength(0);
+		chunkNumber++;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(closed){
+			return;
+		}
+		closed = true;
+
+		try {
+			if(codec.getPlainLength() > 0){
+				writeChunk();
+			}
+			writeHeaderIfNeeded();
+
+			if(sizeKnown && totalWritten != header.dataSize){
+				throw new IOException("Less data written than declared in the header");
+			}
+			if(!sizeKnown){
+				rewriteHeader();
+			}
+		}
+		finally {
+			codec.recycle();
+			out.close();
+		}
+	}
+
+	private void rewriteHeader() throws IOException {
+		header.dataSize = totalWritten;
+
+		ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+		try {
+			crypto.writeHeader(headerBytes, header, publicKey);
+		}
+		catch (CryptoException e) {
+			throw new IOException("Unable to write file header", e);
+		}
+
+		out.flush();
+		FileChannel channel = ((FileOutputStream) out).getChannel();
+		ByteBuffer buf = ByteBuffer.wrap(headerBytes.toByteArray());
+		long position = 0;
+		while (buf.hasRemaining()) {
+			position += channel.write(buf, position);
+		}
+	}
+}
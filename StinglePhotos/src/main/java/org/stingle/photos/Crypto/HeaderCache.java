@@ -0,0 +1,81 @@
+package org.stingle.photos.Crypto;
+
+import android.util.LruCache;
+
+/**
+ * Keeps decrypted file headers, so the same headers string is not unsealed again on every bind.
+ *
+ * Entries are keyed by the headers string, the key which opens them and whether it is the thumb or the file header.
+ * The cache is bounded by the approximate memory taken by the entries and must be cleared when the key changes.
+ * Headers are copied in and out, so callers which change or wipe their header don't touch the cached one.
+ */
+public class HeaderCache {
+
+	public static final String KEY_MAIN = "main";
+
+	private static final int DEFAULT_MAX_BYTES = 1024 * 1024 * 2;
+	private static final int ENTRY_OVERHEAD = 160;
+
+	private final LruCache<String, Crypto.Header> cache;
+
+	public HeaderCache(){
+		this(DEFAULT_MAX_BYTES);
+	}
+
+	public HeaderCache(int maxBytes){
+		cache = new LruCache<String, Crypto.Header>(maxBytes) {
+			@Override
+			protected int sizeOf(String key, Crypto.Header header) {
+				return getSize(key, header);
+			}
+		};
+	}
+
+	/**
+	 * @param keyId identifies the key which opens the headers, {@link #KEY_MAIN} or an album id
+	 */
+	public static String getCacheKey(String headers, String keyId, boolean isThumb){
+		return keyId + (isThumb ? ":t:" : ":f:") + headers;
+	}
+
+	public Crypto.Header get(String cacheKey){
+		Crypto.Header header = cache.get(cacheKey);
+		return (header != null ? header.copy() : null);
+	}
+
+	public void put(String cacheKey, Crypto.Header header){
+		if(cacheKey != null && header != null) {
+			cache.put(cacheKey, header.copy());
+		}
+	}
+
+	/**
+	 * Drops all headers opened with the given key
+	 */
+	public void removeByKeyId(String keyId){
+		String prefix = keyId + ":";
+		for(String cacheKey : cache.snapshot().keySet()){
+			if(cacheKey.startsWith(prefix)){
+				cache.remove(cacheKey);
+			}
+		}
+	}
+
+	public void clear(){
+		cache.evictAll();
+	}
+
+	private static int getSize(String cacheKey, Crypto.Header header){
+		int size = ENTRY_OVERHEAD + cacheKey.length() * 2;
+		if(header.fileId != null){
+			size += header.fileId.length;
+		}
+		if(header.symmetricKey != null){
+			size += header.symmetricKey.length;
+		}
+		if(header.filename != null){
+			size += header.filename.length() * 2;
+		}
+		return size;
+	}
+}
@@ -13,6 +13,7 @@ import org.stingle.photos.Db.StingleDbContract;
 import org.stingle.photos.Files.FileManager;
 
 import java.util.ArrayList;
+import java.util.Collection;
 
 public class AlbumFilesDb implements FilesDb {
 
@@ -309,6 +310,34 @@ public class AlbumFilesDb implements FilesDb {
 		return null;
 	}
 
+	/**
+	 * Looks up all given files in all albums with one query, at most 999 filenames can be given
+	 */
+	public ArrayList<StingleDbFile> getFilesIfExist(Collection<String> filenames){
+		ArrayList<StingleDbFile> files = new ArrayList<>();
+		if(filenames.size() == 0){
+			return files;
+		}
+
+		String selection = StingleDbContract.Columns.COLUMN_NAME_FILENAME + " IN (" + StingleDb.makePlaceholders(filenames.size()) + ")";
+		String[] selectionArgs = filenames.toArray(new String[0]);
+
+		Cursor result = db.openReadDb().query(
+				tableName,
+				projection,
+				selection,
+				selectionArgs,
+				null,
+				null,
+				null
+		);
+		while(result.moveToNext()) {
+			files.add(new StingleDbFile(result));
+		}
+		result.close();
+		return files;
+	}
+
 	public boolean isFileExistsInOtherAlbums(String filename, String albumId){
 
 		String selection = StingleDbContract.Columns.COLUMN_NAME_FILENAME + " = ? AND " + StingleDbContract.Columns.COLUMN_NAME_ALBUM_ID + " <> ?";
@@ -365,6 +394,18 @@ public class AlbumFilesDb implements FilesDb {
 		return DatabaseUtils.queryNumEntries(db.openReadDb(), tableName, selection, selectionArgs);
 	}
 
+	public void beginTransaction(){
+		db.beginTransaction();
+	}
+
+	public void setTransactionSuccessful(){
+		db.setTransactionSuccessful();
+	}
+
+	public void endTransaction(){
+		db.endTransaction();
+	}
+
 	public void close(){
 		db.close();
 	}
@@ -0,0 +1,157 @@
+package org.stingle.photos.Db.Query;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.stingle.photos.Db.StingleDb;
+import org.stingle.photos.Db.StingleDbContract;
+
+import java.util.ArrayList;
+
+/**
+ * Files and thumbnails which have a newer version on the server and are waiting to be downloaded again.
+ * Sync only queues them, the downloads are done later by DownloadQueue.
+ */
+public class DownloadQueueDb {
+
+	private StingleDb db;
+
+	private String tableName = StingleDbContract.Columns.TABLE_NAME_DOWNLOAD_QUEUE;
+
+	public DownloadQueueDb(Context context) {
+		db = new StingleDb(context);
+	}
+
+	private String[] projection = {
+			StingleDbContract.Columns._ID,
+			StingleDbContract.Columns.COLUMN_NAME_FILENAME,
+			StingleDbContract.Columns.COLUMN_NAME_SET,
+			StingleDbContract.Columns.COLUMN_NAME_IS_THUMB,
+			StingleDbContract.Columns.COLUMN_NAME_ATTEMPTS,
+			StingleDbContract.Columns.COLUMN_NAME_DATE_CREATED
+	};
+
+	public static class Item {
+		public long id;
+		public String filename;
+		public int set;
+		public boolean isThumb;
+		public int attempts;
+
+		public Item(long id, String filename, int set, boolean isThumb, int attempts){
+			this.id = id;
+			this.filename = filename;
+			this.set = set;
+			this.isThumb = isThumb;
+			this.attempts = attempts;
+		}
+	}
+
+	/**
+	 * Adds a download to the queue. A download which is already queued for the same file is replaced,
+	 * so it gets a new id and its failed attempts are forgotten.
+	 */
+	public long enqueue(String filename, int set, boolean isThumb){
+		ContentValues values = new ContentValues();
+		values.put(StingleDbContract.Columns.COLUMN_NAME_FILENAME, filename);
+		values.put(StingleDbContract.Columns.COLUMN_NAME_SET, set);
+		values.put(StingleDbContract.Columns.COLUMN_NAME_IS_THUMB, (isThumb ? 1 : 0));
+		values.put(StingleDbContract.Columns.COLUMN_NAME_ATTEMPTS, 0);
+		values.put(StingleDbContract.Columns.COLUMN_NAME_DATE_CREATED, System.currentTimeMillis());
+
+		return db.openWriteDb().insertWithOnConflict(tableName, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+	}
+
+	/**
+	 * @return up to limit queued downloads of the given kind with an id bigger than afterId, oldest first
+	 */
+	public ArrayList<Item> getItems(boolean isThumb, long afterId, int limit){
+		String selection = StingleDbContract.Columns.COLUMN_NAME_IS_THUMB + " = ? AND " + StingleDbContract.Columns._ID + " > ?";
+		String[] selectionArgs = { (isThumb ? "1" : "0"), String.valueOf(afterId) };
+
+		Cursor result = db.openReadDb().query(
+				tableName,
+				projection,
+				selection,
+				selectionArgs,
+				null,
+				null,
+				StingleDbContract.Columns._ID + " ASC",
+				String.valueOf(limit)
+		);
+
+		ArrayList<Item> items = new ArrayList<>();
+		while(result.moveToNext()){
+			items.add(getItemFromCursor(result));
+		}
+		result.close();
+		return items;
+	}
+
+	/**
+	 * @return the queued download of the file or null if there is none
+	 */
+	public Item getItem(String filename, int set, boolean isThumb){
+		String selection = StingleDbContract.Columns.COLUMN_NAME_FILENAME + " = ? AND " +
+				StingleDbContract.Columns.COLUMN_NAME_SET + " = ? AND " +
+				StingleDbContract.Columns.COLUMN_NAME_IS_THUMB + " = ?";
+		String[] selectionArgs = { filename, String.valueOf(set), (isThumb ? "1" : "0") };
+
+		Cursor result = db.openReadDb().query(
+				tableName,
+				projection,
+				selection,
+				selectionArgs,
+				null,
+				null,
+				null
+		);
+
+		Item item = null;
+		if(result.moveToNext()){
+			item = getItemFromCursor(result);
+		}
+		result.close();
+		return item;
+	}
+
+	private Item getItemFromCursor(Cursor result){
+		return new Item(
+				result.getLong(result.getColumnIndexOrThrow(StingleDbContract.Columns._ID)),
+				result.getString(result.getColumnIndexOrThrow(StingleDbContract.Columns.COLUMN_NAME_FILENAME)),
+				result.getInt(result.getColumnIndexOrThrow(StingleDbContract.Columns.COLUMN_NAME_SET)),
+				result.getInt(result.getColumnIndexOrThrow(StingleDbContract.Columns.COLUMN_NAME_IS_THUMB)) == 1,
+				result.getInt(result.getColumnIndexOrThrow(StingleDbContract.Columns.COLUMN_NAME_ATTEMPTS))
+		);
+	}
+
+	public int setAttempts(long id, int attempts){
+		ContentValues values = new ContentValues();
+		values.put(StingleDbContract.Columns.COLUMN_NAME_ATTEMPTS, attempts);
+
+		String selection = StingleDbContract.Columns._ID + " = ?";
+		String[] selectionArgs = { String.valueOf(id) };
+
+		return db.openWriteDb().update(tableName, values, selection, selectionArgs);
+	}
+
+	/**
+	 * Deletes by id, so a download which was queued again while the old one was running stays in the queue
+	 */
+	public int deleteItem(long id){
+		String selection = StingleDbContract.Columns._ID + " = ?";
+		String[] selectionArgs = { String.valueOf(id) };
+
+		return db.openWriteDb().delete(tableName, selection, selectionArgs);
+	}
+
+	public int truncateTable() {
+		return db.openWriteDb().delete(tableName, null, null);
+	}
+
+	public void close() {
+		db.close();
+	}
+}
@@ -4,6 +4,9 @@ import android.database.Cursor;
 
 import org.stingle.photos.Db.Objects.StingleDbFile;
 
+import java.util.ArrayList;
+import java.util.Collection;
+
 public interface FilesDb {
 	public static final int GET_MODE_ALL = 0;
 	public static final int GET_MODE_ONLY_LOCAL = 1;
@@ -21,6 +24,7 @@ public interface FilesDb {
 	public StingleDbFile getFileAtPosition(int pos, String albumId, int sort);
 	public long getTotalFilesCount(String albumId);
 	public StingleDbFile getFileIfExists(String filename, String albumId);
+	public ArrayList<StingleDbFile> getFilesIfExist(Collection<String> filenames);
 	public long insertFile(StingleDbFile file);
 	public int updateFile(StingleDbFile file);
 	public Cursor getFilesList(int mode, int sort, String limit, String albumId);
@@ -28,5 +32,8 @@ public interface FilesDb {
 	public int markFileAsRemote(String filename);
 	public int markFileAsReuploaded(String filename);
 	public int getFilePositionByFilename(String filename, String albumId, int sort);
+	public void beginTransaction();
+	public void setTransactionSuccessful();
+	public void endTransaction();
 	public void close();
 }
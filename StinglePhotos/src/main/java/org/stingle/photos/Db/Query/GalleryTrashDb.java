@@ -12,6 +12,9 @@ import org.stingle.photos.Db.StingleDb;
 import org.stingle.photos.Db.StingleDbContract;
 import org.stingle.photos.Sync.SyncManager;
 
+import java.util.ArrayList;
+import java.util.Collection;
+
 public class GalleryTrashDb implements FilesDb{
 
 	private String tableName;
@@ -181,6 +184,34 @@ public class GalleryTrashDb implements FilesDb{
 		return null;
 	}
 
+	/**
+	 * Looks up all given files with one query, at most 999 filenames can be given
+	 */
+	public ArrayList<StingleDbFile> getFilesIfExist(Collection<String> filenames){
+		ArrayList<StingleDbFile> files = new ArrayList<>();
+		if(filenames.size() == 0){
+			return files;
+		}
+
+		String selection = StingleDbContract.Columns.COLUMN_NAME_FILENAME + " IN (" + StingleDb.makePlaceholders(filenames.size()) + ")";
+		String[] selectionArgs = filenames.toArray(new String[0]);
+
+		Cursor result = db.openReadDb().query(
+				tableName,
+				projection,
+				selection,
+				selectionArgs,
+				null,
+				null,
+				null
+		);
+		while(result.moveToNext()) {
+			files.add(new StingleDbFile(result));
+		}
+		result.close();
+		return files;
+	}
+
 	public Cursor getFilesList(int mode, int sort, String limit, String albumId){
 
 		String selection = null;
@@ -304,6 +335,18 @@ public class GalleryTrashDb implements FilesDb{
 		return DatabaseUtils.queryNumEntries(db.openReadDb(), tableName);
 	}
 
+	public void beginTransaction(){
+		db.beginTransaction();
+	}
+
+	public void setTransactionSuccessful(){
+		db.setTransactionSuccessful();
+	}
+
+	public void endTransaction(){
+		db.endTransaction();
+	}
+
 	public void close(){
 		db.close();
 	}
@@ -0,0 +1,103 @@
+package org.stingle.photos.Db.Query;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.stingle.photos.Db.StingleDb;
+import org.stingle.photos.Db.StingleDbContract;
+
+public class IntegrityDb {
+
+	public static final int STATUS_OK = 1;
+	public static final int STATUS_CORRUPT = 2;
+	public static final int STATUS_NO_KEY = 3;
+	public static final int STATUS_REMOVED = 4;
+	public static final int STATUS_SIZE_MISMATCH = 5;
+	public static final int STATUS_OTHER_FILE = 6;
+
+	private StingleDb db;
+
+	private String tableName = StingleDbContract.Columns.TABLE_NAME_FILE_INTEGRITY;
+
+	public IntegrityDb(Context context) {
+		db = new StingleDb(context);
+	}
+
+	private String[] projection = {
+			StingleDbContract.Columns._ID,
+			StingleDbContract.Columns.COLUMN_NAME_FILENAME,
+			StingleDbContract.Columns.COLUMN_NAME_IS_THUMB,
+			StingleDbContract.Columns.COLUMN_NAME_STATUS,
+			StingleDbContract.Columns.COLUMN_NAME_FILE_SIZE,
+			StingleDbContract.Columns.COLUMN_NAME_DATE_MODIFIED,
+			StingleDbContract.Columns.COLUMN_NAME_DATE_CHECKED
+	};
+
+	public long setStatus(String filename, boolean isThumb, int status, long fileSize, long dateModified){
+		ContentValues values = new ContentValues();
+		values.put(StingleDbContract.Columns.COLUMN_NAME_FILENAME, filename);
+		values.put(StingleDbContract.Columns.COLUMN_NAME_IS_THUMB, (isThumb ? 1 : 0));
+		values.put(StingleDbContract.Columns.COLUMN_NAME_STATUS, status);
+		values.put(StingleDbContract.Columns.COLUMN_NAME_FILE_SIZE, fileSize);
+		values.put(StingleDbContract.Columns.COLUMN_NAME_DATE_MODIFIED, dateModified);
+		values.put(StingleDbContract.Columns.COLUMN_NAME_DATE_CHECKED, System.currentTimeMillis());
+
+		return db.openWriteDb().insertWithOnConflict(tableName, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+	}
+
+	/**
+	 * Checks if the file was already verified after notBefore and was not changed since then.
+	 * A size mismatch counts as verified, all of its chunks authenticated.
+	 */
+	public boolean isVerified(String filename, boolean isThumb, long fileSize, long dateModified, long notBefore){
+		String selection = StingleDbContract.Columns.COLUMN_NAME_FILENAME + " = ? AND " +
+				StingleDbContract.Columns.COLUMN_NAME_IS_THUMB + " = ? AND " +
+				StingleDbContract.Columns.COLUMN_NAME_STATUS + " IN (?, ?) AND " +
+				StingleDbContract.Columns.COLUMN_NAME_FILE_SIZE + " = ? AND " +
+				StingleDbContract.Columns.COLUMN_NAME_DATE_MODIFIED + " = ? AND " +
+				StingleDbContract.Columns.COLUMN_NAME_DATE_CHECKED + " >= ?";
+		String[] selectionArgs = {
+				filename,
+				(isThumb ? "1" : "0"),
+				String.valueOf(STATUS_OK),
+				String.valueOf(STATUS_SIZE_MISMATCH),
+				String.valueOf(fileSize),
+				String.valueOf(dateModified),
+				String.valueOf(notBefore)
+		};
+		return DatabaseUtils.queryNumEntries(db.openReadDb(), tableName, selection, selectionArgs) != 0;
+	}
+
+	public Cursor getFilesList(int status){
+		String selection = StingleDbContract.Columns.COLUMN_NAME_STATUS + " = ?";
+		String[] selectionArgs = {String.valueOf(status)};
+
+		return db.openReadDb().query(
+				tableName,
+				projection,
+				selection,
+				selectionArgs,
+				null,
+				null,
+				StingleDbContract.Columns.COLUMN_NAME_FILENAME + " ASC"
+		);
+	}
+
+	public int deleteFile(String filename){
+		String selection = StingleDbContract.Columns.COLUMN_NAME_FILENAME + " = ?";
+		String[] selectionArgs = { filename };
+
+		return db.openWriteDb().delete(tableName, selection, selectionArgs);
+	}
+
+	public int truncateTable() {
+		return db.openWriteDb().delete(tableName, null, null);
+	}
+
+	public void close() {
+		db.close();
+	}
+}
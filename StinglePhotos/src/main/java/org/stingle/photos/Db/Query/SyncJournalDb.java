@@ -0,0 +1,73 @@
+package org.stingle.photos.Db.Query;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.stingle.photos.Db.StingleDb;
+import org.stingle.photos.Db.StingleDbContract;
+
+/**
+ * Seen time up to which each section of the cloud updates is committed to the local db.
+ * It is written after every committed batch, so a sync which was killed continues from the last batch instead of the last page.
+ */
+public class SyncJournalDb {
+
+	private StingleDb db;
+
+	private String tableName = StingleDbContract.Columns.TABLE_NAME_SYNC_JOURNAL;
+
+	public SyncJournalDb(Context context) {
+		db = new StingleDb(context);
+	}
+
+	private String[] projection = {
+			StingleDbContract.Columns._ID,
+			StingleDbContract.Columns.COLUMN_NAME_SECTION,
+			StingleDbContract.Columns.COLUMN_NAME_SEEN_TIME,
+			StingleDbContract.Columns.COLUMN_NAME_DATE_MODIFIED
+	};
+
+	public long setCheckpoint(String section, long seenTime){
+		ContentValues values = new ContentValues();
+		values.put(StingleDbContract.Columns.COLUMN_NAME_SECTION, section);
+		values.put(StingleDbContract.Columns.COLUMN_NAME_SEEN_TIME, seenTime);
+		values.put(StingleDbContract.Columns.COLUMN_NAME_DATE_MODIFIED, System.currentTimeMillis());
+
+		return db.openWriteDb().insertWithOnConflict(tableName, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+	}
+
+	/**
+	 * @return the stored seen time of the section or 0 if there is none
+	 */
+	public long getCheckpoint(String section){
+		String selection = StingleDbContract.Columns.COLUMN_NAME_SECTION + " = ?";
+		String[] selectionArgs = { section };
+
+		Cursor result = db.openReadDb().query(
+				tableName,
+				projection,
+				selection,
+				selectionArgs,
+				null,
+				null,
+				null
+		);
+
+		long seenTime = 0;
+		if(result.moveToNext()){
+			seenTime = result.getLong(result.getColumnIndexOrThrow(StingleDbContract.Columns.COLUMN_NAME_SEEN_TIME));
+		}
+		result.close();
+		return seenTime;
+	}
+
+	public int truncateTable() {
+		return db.openWriteDb().delete(tableName, null, null);
+	}
+
+	public void close() {
+		db.close();
+	}
+}
@@ -0,0 +1,160 @@
+package org.stingle.photos.Db.Query;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+
+import org.stingle.photos.Db.StingleDb;
+import org.stingle.photos.Db.StingleDbContract;
+
+import java.util.ArrayList;
+
+/**
+ * Files which have to be uploaded. Rows are added and removed by triggers on the files tables (see StingleDbContract),
+ * so every insert or import queues the file and marking it as remote takes it out.
+ * Only the upload state, the attempts and the time of the next attempt are written from here.
+ */
+public class UploadQueueDb {
+
+	public static final int STATUS_QUEUED = 0;
+	public static final int STATUS_UPLOADING = 1;
+	public static final int STATUS_FAILED = 2;
+	public static final int STATUS_DEFERRED = 3;
+
+	private StingleDb db;
+
+	private String tableName = StingleDbContract.Columns.TABLE_NAME_UPLOAD_QUEUE;
+
+	public UploadQueueDb(Context context) {
+		db = new StingleDb(context);
+	}
+
+	private String[] projection = {
+			StingleDbContract.Columns._ID,
+			StingleDbContract.Columns.COLUMN_NAME_FILENAME,
+			StingleDbContract.Columns.COLUMN_NAME_SET,
+			StingleDbContract.Columns.COLUMN_NAME_ALBUM_ID,
+			StingleDbContract.Columns.COLUMN_NAME_STATUS,
+			StingleDbContract.Columns.COLUMN_NAME_ATTEMPTS
+	};
+
+	// Files waiting for upload which are not backing off
+	private String eligibleSelection = StingleDbContract.Columns.COLUMN_NAME_STATUS + " IN (?, ?) AND " + StingleDbContract.Columns.COLUMN_NAME_NEXT_ATTEMPT + " <= ?";
+
+	public static class Item {
+		public long id;
+		public String filename;
+		public int set;
+		public String albumId;
+		public int status;
+		public int attempts;
+
+		public Item(long id, String filename, int set, String albumId, int status, int attempts){
+			this.id = id;
+			this.filename = filename;
+			this.set = set;
+			this.albumId = albumId;
+			this.status = status;
+			this.attempts = attempts;
+		}
+	}
+
+	/**
+	 * @return up to limit files which are waiting for upload and are not backing off, highest priority and newest first
+	 */
+	public ArrayList<Item> getItems(long now, int limit){
+		Cursor result = db.openReadDb().query(
+				tableName,
+				projection,
+				eligibleSelection,
+				getEligibleSelectionArgs(now),
+				null,
+				null,
+				StingleDbContract.Columns.COLUMN_NAME_PRIORITY + " DESC, " + StingleDbContract.Columns.COLUMN_NAME_DATE_CREATED + " DESC",
+				String.valueOf(limit)
+		);
+
+		ArrayList<Item> items = new ArrayList<>();
+		while(result.moveToNext()){
+			items.add(new Item(
+					result.getLong(result.getColumnIndexOrThrow(StingleDbContract.Columns._ID)),
+					result.getString(result.getColumnIndexOrThrow(StingleDbContract.Columns.COLUMN_NAME_FILENAME)),
+					result.getInt(result.getColumnIndexOrThrow(StingleDbContract.Columns.COLUMN_NAME_SET)),
+					result.getString(result.getColumnIndexOrThrow(StingleDbContract.Columns.COLUMN_NAME_ALBUM_ID)),
+					result.getInt(result.getColumnIndexOrThrow(StingleDbContract.Columns.COLUMN_NAME_STATUS)),
+					result.getInt(result.getColumnIndexOrThrow(StingleDbContract.Columns.COLUMN_NAME_ATTEMPTS))
+			));
+		}
+		result.close();
+		return items;
+	}
+
+	public long getCount(){
+		return DatabaseUtils.queryNumEntries(db.openReadDb(), tableName);
+	}
+
+	/**
+	 * @return number of files which can be uploaded now, files which are backing off after a failure are not counted
+	 */
+	public long getEligibleCount(long now){
+		return DatabaseUtils.queryNumEntries(db.openReadDb(), tableName, eligibleSelection, getEligibleSelectionArgs(now));
+	}
+
+	private String[] getEligibleSelectionArgs(long now){
+		return new String[]{ String.valueOf(STATUS_QUEUED), String.valueOf(STATUS_FAILED), String.valueOf(now) };
+	}
+
+	public int setStatus(long id, int status){
+		ContentValues values = new ContentValues();
+		values.put(StingleDbContract.Columns.COLUMN_NAME_STATUS, status);
+
+		String selection = StingleDbContract.Columns._ID + " = ?";
+		String[] selectionArgs = { String.valueOf(id) };
+
+		return db.openWriteDb().update(tableName, values, selection, selectionArgs);
+	}
+
+	/**
+	 * Puts all files with the given status back to the queue, e.g. uploads which were running when the app was killed
+	 */
+	public int resetStatus(int status){
+		ContentValues values = new ContentValues();
+		values.put(StingleDbContract.Columns.COLUMN_NAME_STATUS, STATUS_QUEUED);
+
+		String selection = StingleDbContract.Columns.COLUMN_NAME_STATUS + " = ?";
+		String[] selectionArgs = { String.valueOf(status) };
+
+		return db.openWriteDb().update(tableName, values, selection, selectionArgs);
+	}
+
+	public int markFailed(long id, int attempts, long nextAttempt){
+		ContentValues values = new ContentValues();
+		values.put(StingleDbContract.Columns.COLUMN_NAME_STATUS, STATUS_FAILED);
+		values.put(StingleDbContract.Columns.COLUMN_NAME_ATTEMPTS, attempts);
+		values.put(StingleDbContract.Columns.COLUMN_NAME_NEXT_ATTEMPT, nextAttempt);
+
+		String selection = StingleDbContract.Columns._ID + " = ?";
+		String[] selectionArgs = { String.valueOf(id) };
+
+		return db.openWriteDb().update(tableName, values, selection, selectionArgs);
+	}
+
+	/**
+	 * For files which are in the queue but can't be uploaded anymore
+	 */
+	public int deleteItem(long id){
+		String selection = StingleDbContract.Columns._ID + " = ?";
+		String[] selectionArgs = { String.valueOf(id) };
+
+		return db.openWriteDb().delete(tableName, selection, selectionArgs);
+	}
+
+	public int truncateTable() {
+		return db.openWriteDb().delete(tableName, null, null);
+	}
+
+	public void close() {
+		db.close();
+	}
+}
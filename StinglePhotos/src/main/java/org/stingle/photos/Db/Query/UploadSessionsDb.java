@@ -0,0 +1,106 @@
+package org.stingle.photos.Db.Query;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.stingle.photos.Db.StingleDb;
+import org.stingle.photos.Db.StingleDbContract;
+
+/**
+ * Keeps the server upload id and the acknowledged offset of files which are being uploaded in parts,
+ * so an interrupted upload continues from the last acknowledged part.
+ */
+public class UploadSessionsDb {
+
+	private StingleDb db;
+
+	private String tableName = StingleDbContract.Columns.TABLE_NAME_UPLOAD_SESSIONS;
+
+	public UploadSessionsDb(Context context) {
+		db = new StingleDb(context);
+	}
+
+	private String[] projection = {
+			StingleDbContract.Columns._ID,
+			StingleDbContract.Columns.COLUMN_NAME_FILENAME,
+			StingleDbContract.Columns.COLUMN_NAME_UPLOAD_ID,
+			StingleDbContract.Columns.COLUMN_NAME_UPLOAD_OFFSET,
+			StingleDbContract.Columns.COLUMN_NAME_FILE_SIZE,
+			StingleDbContract.Columns.COLUMN_NAME_DATE_MODIFIED
+	};
+
+	public static class Session {
+		public String filename;
+		public String uploadId;
+		public long offset;
+		public long fileSize;
+		public long dateModified;
+
+		public Session(String filename, String uploadId, long offset, long fileSize, long dateModified){
+			this.filename = filename;
+			this.uploadId = uploadId;
+			this.offset = offset;
+			this.fileSize = fileSize;
+			this.dateModified = dateModified;
+		}
+	}
+
+	public long saveSession(Session session){
+		ContentValues values = new ContentValues();
+		values.put(StingleDbContract.Columns.COLUMN_NAME_FILENAME, session.filename);
+		values.put(StingleDbContract.Columns.COLUMN_NAME_UPLOAD_ID, session.uploadId);
+		values.put(StingleDbContract.Columns.COLUMN_NAME_UPLOAD_OFFSET, session.offset);
+		values.put(StingleDbContract.Columns.COLUMN_NAME_FILE_SIZE, session.fileSize);
+		values.put(StingleDbContract.Columns.COLUMN_NAME_DATE_MODIFIED, session.dateModified);
+
+		return db.openWriteDb().insertWithOnConflict(tableName, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+	}
+
+	/**
+	 * @return the session of the file or null if there is none
+	 */
+	public Session getSession(String filename){
+		String selection = StingleDbContract.Columns.COLUMN_NAME_FILENAME + " = ?";
+		String[] selectionArgs = { filename };
+
+		Cursor result = db.openReadDb().query(
+				tableName,
+				projection,
+				selection,
+				selectionArgs,
+				null,
+				null,
+				null
+		);
+
+		Session session = null;
+		if(result.moveToNext()){
+			session = new Session(
+					result.getString(result.getColumnIndexOrThrow(StingleDbContract.Columns.COLUMN_NAME_FILENAME)),
+					result.getString(result.getColumnIndexOrThrow(StingleDbContract.Columns.COLUMN_NAME_UPLOAD_ID)),
+					result.getLong(result.getColumnIndexOrThrow(StingleDbContract.Columns.COLUMN_NAME_UPLOAD_OFFSET)),
+					result.getLong(result.getColumnIndexOrThrow(StingleDbContract.Columns.COLUMN_NAME_FILE_SIZE)),
+					result.getLong(result.getColumnIndexOrThrow(StingleDbContract.Columns.COLUMN_NAME_DATE_MODIFIED))
+			);
+		}
+		result.close();
+		return session;
+	}
+
+	public int deleteSession(String filename){
+		String selection = StingleDbContract.Columns.COLUMN_NAME_FILENAME + " = ?";
+		String[] selectionArgs = { filename };
+
+		return db.openWriteDb().delete(tableName, selection, selectionArgs);
+	}
+
+	public int truncateTable() {
+		return db.openWriteDb().delete(tableName, null, null);
+	}
+
+	public void close() {
+		db.close();
+	}
+}
@@ -4,9 +4,10 @@ import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+
 public class StingleDb extends SQLiteOpenHelper {
 	// If you change the database schema, you must increment the database version.
-	public static final int DATABASE_VERSION = 3;
+	public static final int DATABASE_VERSION = 8;
 	public static final String DATABASE_NAME = "stingleFiles.db";
 
 	public static final int SORT_ASC = 0;
@@ -44,6 +45,23 @@ public class StingleDb extends SQLiteOpenHelper {
 			db.execSQL(StingleDbContract.SQL_CREATE_IMPORTED_IDS);
 			db.execSQL(StingleDbContract.SQL_CREATE_IMPORTED_IDS_MID_INDEX);
 		}
+		if(oldVersion < 4 && newVersion >= 4){
+			db.execSQL(StingleDbContract.SQL_CREATE_FILE_INTEGRITY);
+			db.execSQL(StingleDbContract.SQL_CREATE_FILE_INTEGRITY_FN_INDEX);
+		}
+		if(oldVersion < 5 && newVersion >= 5){
+			db.execSQL(StingleDbContract.SQL_CREATE_UPLOAD_SESSIONS);
+		}
+		if(oldVersion < 6 && newVersion >= 6){
+			db.execSQL(StingleDbContract.SQL_CREATE_SYNC_JOURNAL);
+		}
+		if(oldVersion < 7 && newVersion >= 7){
+			db.execSQL(StingleDbContract.SQL_CREATE_DOWNLOAD_QUEUE);
+			db.execSQL(StingleDbContract.SQL_CREATE_DOWNLOAD_QUEUE_FN_INDEX);
+		}
+		if(oldVersion < 8 && newVersion >= 8){
+			createUploadQueue(db);
+		}
 	}
 	public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
 		onUpgrade(db, oldVersion, newVersion);
@@ -69,6 +87,35 @@ public class StingleDb extends SQLiteOpenHelper {
 
 		db.execSQL(StingleDbContract.SQL_CREATE_IMPORTED_IDS);
 		db.execSQL(StingleDbContract.SQL_CREATE_IMPORTED_IDS_MID_INDEX);
+
+		db.execSQL(StingleDbContract.SQL_CREATE_FILE_INTEGRITY);
+		db.execSQL(StingleDbContract.SQL_CREATE_FILE_INTEGRITY_FN_INDEX);
+
+		db.execSQL(StingleDbContract.SQL_CREATE_UPLOAD_SESSIONS);
+
+		db.execSQL(StingleDbContract.SQL_CREATE_SYNC_JOURNAL);
+
+		db.execSQL(StingleDbContract.SQL_CREATE_DOWNLOAD_QUEUE);
+		db.execSQL(StingleDbContract.SQL_CREATE_DOWNLOAD_QUEUE_FN_INDEX);
+
+		createUploadQueue(db);
+	}
+
+	private void createUploadQueue(SQLiteDatabase db){
+		db.execSQL(StingleDbContract.SQL_CREATE_UPLOAD_QUEUE);
+		db.execSQL(StingleDbContract.SQL_CREATE_UPLOAD_QUEUE_FN_INDEX);
+		db.execSQL(StingleDbContract.SQL_CREATE_UPLOAD_QUEUE_ORDER_INDEX);
+
+		// Gallery first, then albums, trash last
+		execSQL(db, StingleDbContract.getUploadQueueStatements(StingleDbContract.Columns.TABLE_NAME_GALLERY, StingleDbContract.SET_GALLERY, 2));
+		execSQL(db, StingleDbContract.getUploadQueueStatements(StingleDbContract.Columns.TABLE_NAME_ALBUM_FILES, StingleDbContract.SET_ALBUM, 1));
+		execSQL(db, StingleDbContract.getUploadQueueStatements(StingleDbContract.Columns.TABLE_NAME_TRASH, StingleDbContract.SET_TRASH, 0));
+	}
+
+	private static void execSQL(SQLiteDatabase db, String[] statements){
+		for(String statement : statements){
+			db.execSQL(statement);
+		}
 	}
 
 	private void deleteTables(SQLiteDatabase db){
@@ -96,6 +143,29 @@ public class StingleDb extends SQLiteOpenHelper {
 		return this.dbRead;
 	}
 
+	public void beginTransaction(){
+		openWriteDb().beginTransaction();
+	}
+
+	public void setTransactionSuccessful(){
+		openWriteDb().setTransactionSuccessful();
+	}
+
+	public void endTransaction(){
+		openWriteDb().endTransaction();
+	}
+
+	/**
+	 * @return "?,?,..." with count placeholders for an IN (...) clause
+	 */
+	public static String makePlaceholders(int count){
+		StringBuilder placeholders = new StringBuilder();
+		for(int i = 0; i < count; i++){
+			placeholders.append(i == 0 ? "?" : ",?");
+		}
+		return placeholders.toString();
+	}
+
 	public void close(){
 		if(this.dbWrite != null) {
 			this.dbWrite.close();
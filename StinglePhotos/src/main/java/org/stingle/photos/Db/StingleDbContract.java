@@ -6,6 +6,11 @@ public class StingleDbContract {
 
 	private StingleDbContract() {}
 
+	/* Sets the files tables belong to, as stored in the set column */
+	public static final int SET_GALLERY = 0;
+	public static final int SET_TRASH = 1;
+	public static final int SET_ALBUM = 2;
+
 	/* Inner class that defines the table contents */
 	public static class Columns implements BaseColumns {
 		public static final String TABLE_NAME_GALLERY = "files";
@@ -14,6 +19,11 @@ public class StingleDbContract {
 		public static final String TABLE_NAME_ALBUM_FILES = "album_files";
 		public static final String TABLE_NAME_CONTACTS = "contacts";
 		public static final String TABLE_NAME_IMPORTED_IDS = "imported_ids";
+		public static final String TABLE_NAME_FILE_INTEGRITY = "file_integrity";
+		public static final String TABLE_NAME_UPLOAD_SESSIONS = "upload_sessions";
+		public static final String TABLE_NAME_SYNC_JOURNAL = "sync_journal";
+		public static final String TABLE_NAME_DOWNLOAD_QUEUE = "download_queue";
+		public static final String TABLE_NAME_UPLOAD_QUEUE = "upload_queue";
 
 		public static final String COLUMN_NAME_FILENAME = "filename";
 		public static final String COLUMN_NAME_IS_LOCAL = "is_local";
@@ -44,6 +54,23 @@ public class StingleDbContract {
 
 		public static final String COLUMN_NAME_MEDIA_ID = "media_id";
 
+		public static final String COLUMN_NAME_IS_THUMB = "is_thumb";
+		public static final String COLUMN_NAME_STATUS = "status";
+		public static final String COLUMN_NAME_FILE_SIZE = "file_size";
+		public static final String COLUMN_NAME_DATE_CHECKED = "date_checked";
+
+		public static final String COLUMN_NAME_UPLOAD_ID = "upload_id";
+		public static final String COLUMN_NAME_UPLOAD_OFFSET = "upload_offset";
+
+		public static final String COLUMN_NAME_SECTION = "section";
+		public static final String COLUMN_NAME_SEEN_TIME = "seen_time";
+
+		public static final String COLUMN_NAME_SET = "file_set";
+		public static final String COLUMN_NAME_ATTEMPTS = "attempts";
+
+		public static final String COLUMN_NAME_PRIORITY = "priority";
+		public static final String COLUMN_NAME_NEXT_ATTEMPT = "next_attempt";
+
 	}
 
 	public static final String SQL_CREATE_FILES =
@@ -153,4 +180,97 @@ public class StingleDbContract {
 					")";
 	public static final String SQL_CREATE_IMPORTED_IDS_MID_INDEX =
 			"CREATE UNIQUE INDEX c_m_id ON "+ Columns.TABLE_NAME_IMPORTED_IDS +" ("+ Columns.COLUMN_NAME_MEDIA_ID +")";
+
+	public static final String SQL_CREATE_FILE_INTEGRITY =
+			"CREATE TABLE " + Columns.TABLE_NAME_FILE_INTEGRITY + " (" +
+					Columns._ID + " INTEGER PRIMARY KEY," +
+					Columns.COLUMN_NAME_FILENAME + " TEXT NOT NULL," +
+					Columns.COLUMN_NAME_IS_THUMB + " INTEGER NOT NULL," +
+					Columns.COLUMN_NAME_STATUS + " INTEGER NOT NULL," +
+					Columns.COLUMN_NAME_FILE_SIZE + " INTEGER," +
+					Columns.COLUMN_NAME_DATE_MODIFIED + " INTEGER," +
+					Columns.COLUMN_NAME_DATE_CHECKED + " INTEGER" +
+					")";
+	public static final String SQL_CREATE_FILE_INTEGRITY_FN_INDEX =
+			"CREATE UNIQUE INDEX fi_filename ON "+ Columns.TABLE_NAME_FILE_INTEGRITY +" ("+ Columns.COLUMN_NAME_FILENAME +", "+ Columns.COLUMN_NAME_IS_THUMB +")";
+
+	public static final String SQL_CREATE_UPLOAD_SESSIONS =
+			"CREATE TABLE " + Columns.TABLE_NAME_UPLOAD_SESSIONS + " (" +
+					Columns._ID + " INTEGER PRIMARY KEY," +
+					Columns.COLUMN_NAME_FILENAME + " TEXT NOT NULL UNIQUE," +
+					Columns.COLUMN_NAME_UPLOAD_ID + " TEXT NOT NULL," +
+					Columns.COLUMN_NAME_UPLOAD_OFFSET + " INTEGER NOT NULL," +
+					Columns.COLUMN_NAME_FILE_SIZE + " INTEGER," +
+					Columns.COLUMN_NAME_DATE_MODIFIED + " INTEGER" +
+					")";
+
+	public static final String SQL_CREATE_SYNC_JOURNAL =
+			"CREATE TABLE " + Columns.TABLE_NAME_SYNC_JOURNAL + " (" +
+					Columns._ID + " INTEGER PRIMARY KEY," +
+					Columns.COLUMN_NAME_SECTION + " TEXT NOT NULL UNIQUE," +
+					Columns.COLUMN_NAME_SEEN_TIME + " INTEGER NOT NULL," +
+					Columns.COLUMN_NAME_DATE_MODIFIED + " INTEGER" +
+					")";
+
+	public static final String SQL_CREATE_DOWNLOAD_QUEUE =
+			"CREATE TABLE " + Columns.TABLE_NAME_DOWNLOAD_QUEUE + " (" +
+					Columns._ID + " INTEGER PRIMARY KEY," +
+					Columns.COLUMN_NAME_FILENAME + " TEXT NOT NULL," +
+					Columns.COLUMN_NAME_SET + " INTEGER NOT NULL," +
+					Columns.COLUMN_NAME_IS_THUMB + " INTEGER NOT NULL," +
+					Columns.COLUMN_NAME_ATTEMPTS + " INTEGER NOT NULL DEFAULT 0," +
+					Columns.COLUMN_NAME_DATE_CREATED + " INTEGER" +
+					")";
+	public static final String SQL_CREATE_DOWNLOAD_QUEUE_FN_INDEX =
+			"CREATE UNIQUE INDEX dq_filename ON "+ Columns.TABLE_NAME_DOWNLOAD_QUEUE +" ("+ Columns.COLUMN_NAME_FILENAME +", "+ Columns.COLUMN_NAME_SET +", "+ Columns.COLUMN_NAME_IS_THUMB +")";
+
+	public static final String SQL_CREATE_UPLOAD_QUEUE =
+			"CREATE TABLE " + Columns.TABLE_NAME_UPLOAD_QUEUE + " (" +
+					Columns._ID + " INTEGER PRIMARY KEY," +
+					Columns.COLUMN_NAME_FILENAME + " TEXT NOT NULL," +
+					Columns.COLUMN_NAME_SET + " INTEGER NOT NULL," +
+					Columns.COLUMN_NAME_ALBUM_ID + " TEXT NOT NULL," +
+					Columns.COLUMN_NAME_STATUS + " INTEGER NOT NULL DEFAULT 0," +
+					Columns.COLUMN_NAME_PRIORITY + " INTEGER NOT NULL DEFAULT 0," +
+					Columns.COLUMN_NAME_ATTEMPTS + " INTEGER NOT NULL DEFAULT 0," +
+					Columns.COLUMN_NAME_NEXT_ATTEMPT + " INTEGER NOT NULL DEFAULT 0," +
+					Columns.COLUMN_NAME_DATE_CREATED + " INTEGER" +
+					")";
+	public static final String SQL_CREATE_UPLOAD_QUEUE_FN_INDEX =
+			"CREATE UNIQUE INDEX uq_filename ON "+ Columns.TABLE_NAME_UPLOAD_QUEUE +" ("+ Columns.COLUMN_NAME_FILENAME +", "+ Columns.COLUMN_NAME_SET +", "+ Columns.COLUMN_NAME_ALBUM_ID +")";
+	public static final String SQL_CREATE_UPLOAD_QUEUE_ORDER_INDEX =
+			"CREATE INDEX uq_order ON "+ Columns.TABLE_NAME_UPLOAD_QUEUE +" ("+ Columns.COLUMN_NAME_PRIORITY +", "+ Columns.COLUMN_NAME_DATE_CREATED +")";
+
+	/**
+	 * Triggers which keep upload_queue in step with the rows of a files table that are only local or have to be uploaded again,
+	 * whichever query writes them. The second statement fills the queue from the rows already in the table.
+	 *
+	 * @param priority files of sets with a higher priority are uploaded first
+	 */
+	public static String[] getUploadQueueStatements(String table, int set, int priority){
+		boolean hasAlbumId = table.equals(Columns.TABLE_NAME_ALBUM_FILES);
+		String newAlbumId = (hasAlbumId ? "NEW." + Columns.COLUMN_NAME_ALBUM_ID : "''");
+		String oldAlbumId = (hasAlbumId ? "OLD." + Columns.COLUMN_NAME_ALBUM_ID : "''");
+		String condition = "NEW." + Columns.COLUMN_NAME_IS_LOCAL + " = 1 AND (NEW." + Columns.COLUMN_NAME_IS_REMOTE + " = 0 OR NEW." + Columns.COLUMN_NAME_REUPLOAD + " = 1)";
+
+		String insert = "INSERT OR IGNORE INTO " + Columns.TABLE_NAME_UPLOAD_QUEUE + " (" +
+				Columns.COLUMN_NAME_FILENAME + ", " + Columns.COLUMN_NAME_SET + ", " + Columns.COLUMN_NAME_ALBUM_ID + ", " +
+				Columns.COLUMN_NAME_PRIORITY + ", " + Columns.COLUMN_NAME_DATE_CREATED + ")";
+		String insertNew = insert + " VALUES (NEW." + Columns.COLUMN_NAME_FILENAME + ", " + set + ", " + newAlbumId + ", " + priority + ", NEW." + Columns.COLUMN_NAME_DATE_CREATED + ");";
+		String deleteOld = "DELETE FROM " + Columns.TABLE_NAME_UPLOAD_QUEUE + " WHERE " +
+				Columns.COLUMN_NAME_FILENAME + " = OLD." + Columns.COLUMN_NAME_FILENAME + " AND " +
+				Columns.COLUMN_NAME_SET + " = " + set + " AND " +
+				Columns.COLUMN_NAME_ALBUM_ID + " = " + oldAlbumId + ";";
+
+		return new String[]{
+				"CREATE TRIGGER uq_" + table + "_insert AFTER INSERT ON " + table + " WHEN " + condition + " BEGIN " + insertNew + " END",
+				insert + " SELECT " + Columns.COLUMN_NAME_FILENAME + ", " + set + ", " + (hasAlbumId ? Columns.COLUMN_NAME_ALBUM_ID : "''") + ", " + priority + ", " + Columns.COLUMN_NAME_DATE_CREATED +
+						" FROM " + table + " WHERE " + condition.replace("NEW.", ""),
+				"CREATE TRIGGER uq_" + table + "_update_remove AFTER UPDATE ON " + table + " WHEN NOT (" + condition + ")" +
+						" OR OLD." + Columns.COLUMN_NAME_FILENAME + " != NEW." + Columns.COLUMN_NAME_FILENAME +
+						" OR " + oldAlbumId + " != " + newAlbumId + " BEGIN " + deleteOld + " END",
+				"CREATE TRIGGER uq_" + table + "_update_add AFTER UPDATE ON " + table + " WHEN " + condition + " BEGIN " + insertNew + " END",
+				"CREATE TRIGGER uq_" + table + "_delete AFTER DELETE ON " + table + " BEGIN " + deleteOld + " END"
+		};
+	}
 }
@@ -25,6 +25,7 @@ import org.stingle.photos.Net.HttpsClient;
 import org.stingle.photos.R;
 import org.stingle.photos.StinglePhotosApplication;
 import org.stingle.photos.Util.Helpers;
+import org.stingle.photos.Video.PreviewStrip;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -46,6 +47,7 @@ public class FileManager {
 	static final public String SHARE_CACHE_DIR = "share";
 	static final public String DECRYPT_DIR = "StinglePhotosDecrypted";
 	static final public String THUMB_CACHE_DIR = "thumbCache";
+	static final public String ORIGINAL_CACHE_DIR = "originalCache";
 
 	public static byte[] getAndCacheThumb(Context context, String filename, int set) throws IOException {
 		return getAndCacheThumb(context,filename, set,null);
@@ -355,9 +357,14 @@ public class FileManager {
 	}
 
 	public static void deleteTempFiles(Context context){
-		File file = new File(context.getCacheDir().getPath() + "/"+FileManager.SHARE_CACHE_DIR);
-		if (file.isDirectory()) {
-			File[] files = file.listFiles();
+		deleteFilesInDir(new File(context.getCacheDir().getPath() + "/"+FileManager.SHARE_CACHE_DIR));
+		// Only unfinished downloads of remote originals are left here
+		deleteFilesInDir(getOriginalCacheDir(context));
+	}
+
+	private static void deleteFilesInDir(File dir){
+		if (dir.isDirectory()) {
+			File[] files = dir.listFiles();
 			if (files != null) {
 				for (File f : files) {
 					if (!f.isDirectory()) {
@@ -368,6 +375,24 @@ public class FileManager {
 		}
 	}
 
+	public static File getOriginalCacheDir(Context context){
+		return new File(context.getCacheDir().getPath() + "/" + ORIGINAL_CACHE_DIR);
+	}
+
+	/**
+	 * Deletes unfinished downloads of the file. A .part file is continued without checking what it holds,
+	 * so it has to go when the server gets a new version of the file.
+	 */
+	public static void deletePartFiles(Context context, String filename){
+		String[] dirs = {getHomeDir(context), getThumbsDir(context), getOriginalCacheDir(context).getPath()};
+		for (String dir : dirs) {
+			File partFile = new File(dir + "/" + filename + HttpsClient.PART_FILE_SUFFIX);
+			if (partFile.exists()) {
+				partFile.delete();
+			}
+		}
+	}
+
 	public static String getCameraTmpDir(Context context) {
 		File cacheDir = context.getCacheDir();
 		File tmpDir = new File(cacheDir.getAbsolutePath() + "/camera_tmp/");
@@ -391,5 +416,6 @@ public class FileManager {
 		if (thumbFile.exists()) {
 			thumbFile.delete();
 		}
+		PreviewStrip.delete(context, filename);
 	}
 }
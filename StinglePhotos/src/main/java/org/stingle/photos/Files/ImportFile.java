@@ -18,6 +18,7 @@ import org.stingle.photos.Db.Query.GalleryTrashDb;
 import org.stingle.photos.StinglePhotosApplication;
 import org.stingle.photos.Sync.SyncManager;
 import org.stingle.photos.Util.Helpers;
+import org.stingle.photos.Video.PreviewStrip;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -121,6 +122,7 @@ public class ImportFile {
 
 					Helpers.generateThumbnail(context, bos.toByteArray(), encFilename, filename, fileId, Crypto.FILE_TYPE_VIDEO, videoDuration);
 				}
+				PreviewStrip.generate(context, uri, encFilename, filename, fileId, videoDuration);
 			}
 
 			InputStream in = context.getContentResolver().openInputStream(uri);
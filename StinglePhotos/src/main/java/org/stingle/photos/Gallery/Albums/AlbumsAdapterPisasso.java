@@ -333,7 +333,7 @@ public class AlbumsAdapterPisasso extends RecyclerView.Adapter<RecyclerView.View
 				Crypto.AlbumData albumData;
 				albumData = albumsDataCache.get(dbPos);
 				if(albumData == null) {
-					albumData = StinglePhotosApplication.getCrypto().parseAlbumData(album.publicKey, album.encPrivateKey, album.metadata);
+					albumData = StinglePhotosApplication.getAlbumKeyring().get(album);
 					albumsDataCache.put(dbPos, albumData);
 				}
 
@@ -78,7 +78,7 @@ public class AlbumsPicassoLoader extends RequestHandler {
 			Crypto.AlbumData albumData;
 			albumData = albumsDataCache.get(dbPos);
 			if (albumData == null) {
-				albumData = StinglePhotosApplication.getCrypto().parseAlbumData(album.publicKey, album.encPrivateKey, album.metadata);
+				albumData = StinglePhotosApplication.getAlbumKeyring().get(album);
 				albumsDataCache.put(dbPos, albumData);
 			}
 
@@ -37,9 +37,8 @@ public class GalleryHelpers {
 	public static String getAlbumName(StingleDbAlbum album){
 		String albumName = "";
 		try {
-			Crypto.AlbumData albumData = StinglePhotosApplication.getCrypto().parseAlbumData(album.publicKey, album.encPrivateKey, album.metadata);
+			Crypto.AlbumData albumData = StinglePhotosApplication.getAlbumKeyring().get(album);
 			albumName = albumData.metadata.name;
-			albumData = null;
 		} catch (IOException | CryptoException | IllegalArgumentException e) {
 			e.printStackTrace();
 		}
@@ -8,16 +8,20 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.stingle.photos.BuildConfig;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStreamWriter;
+import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.security.KeyManagementException;
@@ -26,14 +30,41 @@ import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
 
 public class HttpsClient {
 
+	/**
+	 * Idle keep-alive connections kept in the pool for each host
+	 */
+	public static final int MAX_CONNECTIONS_PER_HOST = 8;
+	private static final int SESSION_CACHE_SIZE = 32;
+	private static final int SESSION_TIMEOUT = 24 * 60 * 60;
+
+	public static final String PART_FILE_SUFFIX = ".part";
+	private static final int DOWNLOAD_ATTEMPTS = 5;
+	private static final long DOWNLOAD_RETRY_DELAY = 2000;
+	private static final int DOWNLOAD_BUFFER_SIZE = 64 * 1024;
+	private static final Pattern CONTENT_RANGE_HEADER = Pattern.compile("^bytes (\\d+)-(\\d+)/(\\d+|\\*)$");
+	private static final Pattern CONTENT_RANGE_UNSATISFIABLE = Pattern.compile("^bytes \\*/(\\d+)$");
+
+	private static SSLSocketFactory sslSocketFactory;
+
+	/**
+	 * The platform connection pool reads these once, so this is called before any networking
+	 */
+	public static void setupConnectionPool() {
+		System.setProperty("http.keepAlive", "true");
+		System.setProperty("http.maxConnections", String.valueOf(MAX_CONNECTIONS_PER_HOST));
+	}
+
 	public static void post(Context context, String urlStr, HashMap<String, String> params, OnNetworkFinish onFinish) {
 		new PostRequest(context, urlStr, params, onFinish).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
 	}
@@ -60,74 +91,60 @@ public class HttpsClient {
 		} };
 		return trustAllCerts;
 	}
-	public static JSONObject postFunc(String urlStr, HashMap<String, String> params) {
-		JSONObject json = null;
-		try {
-			Log.d("url", urlStr);
-			URL url = new URL(urlStr);
-			HttpsURLConnection conn = (HttpsURLConnection) url.openConnection();
 
-
-			// Create the SSL connection
-			SSLContext sc;
-			sc = SSLContext.getInstance("TLS");
-			if(BuildConfig.ALLOW_INSECURE_TLS) {
+	/**
+	 * Socket factory shared by connections, so they can be pooled and TLS sessions are resumed instead of a full handshake
+	 */
+	public static synchronized SSLSocketFactory getSSLSocketFactory() throws NoSuchAlgorithmException, KeyManagementException {
+		if(sslSocketFactory == null) {
+			SSLContext sc = SSLContext.getInstance("TLS");
+			if (BuildConfig.ALLOW_INSECURE_TLS) {
 				sc.init(null, getTrustingManager(), new java.security.SecureRandom());
-				conn.setHostnameVerifier((s, sslSession) -> true);
 			}
-			else{
+			else {
 				sc.init(null, null, new java.security.SecureRandom());
 			}
-			conn.setSSLSocketFactory(sc.getSocketFactory());
-
-			// Use this if you need SSL authentication
-			//String userpass = user + ":" + password;
-			//String basicAuth = "Basic " + Base64.encodeToString(userpass.getBytes(), Base64.DEFAULT);
-			//conn.setRequestProperty("Authorization", basicAuth);
-
-			// set Timeout and method
-			conn.setReadTimeout(60000);
-			conn.setConnectTimeout(7000);
-			conn.setRequestMethod("POST");
-			conn.setDoInput(true);
-
-			// Insert app version to all requests
-			if(params == null){
-				params = new HashMap<>();
-			}
-
-			// Add any data you wish to post here
-			String data = "";
-			for (String key : params.keySet()) {
-				String value = params.get(key);
-				if(value != null) {
-					Log.d("param", key + " = " + params.get(key));
-					data += URLEncoder.encode(key, "UTF-8") + "=" + URLEncoder.encode(value, "UTF-8") + "&";
-				}
-			}
-
-			if (data.length() > 0) {
-				data = data.substring(0, data.length() - 1);
+			sc.getClientSessionContext().setSessionCacheSize(SESSION_CACHE_SIZE);
+			sc.getClientSessionContext().setSessionTimeout(SESSION_TIMEOUT);
+			sslSocketFactory = sc.getSocketFactory();
+		}
+		return sslSocketFactory;
+	}
 
-				OutputStreamWriter wr = new OutputStreamWriter(conn.getOutputStream());
+	public static void setupSSL(HttpsURLConnection conn) throws NoSuchAlgorithmException, KeyManagementException {
+		if(BuildConfig.ALLOW_INSECURE_TLS) {
+			conn.setHostnameVerifier((s, sslSession) -> true);
+		}
+		conn.setSSLSocketFactory(getSSLSocketFactory());
+	}
 
-				wr.write(data);
-				wr.flush();
-			}
+	/**
+	 * Opens a connection through the shared TLS setup. The socket goes back to the keep-alive pool
+	 * when the response is read to the end and closed, so the next request to the same host skips the handshake.
+	 */
+	public static HttpsURLConnection openConnection(URL url) throws IOException, NoSuchAlgorithmException, KeyManagementException {
+		HttpsURLConnection conn = (HttpsURLConnection) url.openConnection();
+		setupSSL(conn);
+		return conn;
+	}
+	public static JSONObject postFunc(String urlStr, HashMap<String, String> params) {
+		JSONObject json = null;
+		try {
+			HttpsURLConnection conn = sendPost(urlStr, params);
 
-			BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream()));
 			StringBuilder sb = new StringBuilder();
-			String line = null;
-
-			// Read Server Response
-			while ((line = reader.readLine()) != null) {
-				// Append server response in string
-				sb.append(line + "\n");
+			// Closing the response lets the connection go back to the pool
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream()))) {
+				String line = null;
+
+				// Read Server Response
+				while ((line = reader.readLine()) != null) {
+					// Append server response in string
+					sb.append(line + "\n");
+				}
 			}
 			Log.e("resultStr", sb.toString());
 			json = new JSONObject(sb.toString());
-
-			reader.close();
 		}
 		catch (IOException | NoSuchAlgorithmException | KeyManagementException | JSONException e) {
 			e.printStackTrace();
@@ -137,22 +154,18 @@ public class HttpsClient {
 		return json;
 	}
 
-	public static void downloadFile(String urlStr, HashMap<String, String> params, String outputPath) throws IOException, NoSuchAlgorithmException, KeyManagementException {
-		Log.e("url", urlStr);
-		URL url = new URL(urlStr);
-		HttpsURLConnection conn = (HttpsURLConnection) url.openConnection();
+	/**
+	 * Posts like postFunc but returns the response body unparsed, so big responses can be read as they arrive.
+	 * The caller has to close the stream.
+	 */
+	public static InputStream postForStream(String urlStr, HashMap<String, String> params) throws IOException, NoSuchAlgorithmException, KeyManagementException {
+		return sendPost(urlStr, params).getInputStream();
+	}
 
-		// Create the SSL connection
-		SSLContext sc;
-		sc = SSLContext.getInstance("TLS");
-		if(BuildConfig.ALLOW_INSECURE_TLS) {
-			sc.init(null, getTrustingManager(), new java.security.SecureRandom());
-			conn.setHostnameVerifier((s, sslSession) -> true);
-		}
-		else{
-			sc.init(null, null, new java.security.SecureRandom());
-		}
-		conn.setSSLSocketFactory(sc.getSocketFactory());
+	private static HttpsURLConnection sendPost(String urlStr, HashMap<String, String> params) throws IOException, NoSuchAlgorithmException, KeyManagementException {
+		Log.d("url", urlStr);
+		URL url = new URL(urlStr);
+		HttpsURLConnection conn = openConnection(url);
 
 		// Use this if you need SSL authentication
 		//String userpass = user + ":" + password;
@@ -164,7 +177,6 @@ public class HttpsClient {
 		conn.setConnectTimeout(7000);
 		conn.setRequestMethod("POST");
 		conn.setDoInput(true);
-		conn.setDoOutput(true);
 
 		// Insert app version to all requests
 		if(params == null){
@@ -174,8 +186,11 @@ public class HttpsClient {
 		// Add any data you wish to post here
 		String data = "";
 		for (String key : params.keySet()) {
-			Log.d("param", key + " = " + params.get(key));
-			data += URLEncoder.encode(key, "UTF-8") + "=" + URLEncoder.encode(params.get(key), "UTF-8") + "&";
+			String value = params.get(key);
+			if(value != null) {
+				Log.d("param", key + " = " + params.get(key));
+				data += URLEncoder.encode(key, "UTF-8") + "=" + URLEncoder.encode(value, "UTF-8") + "&";
+			}
 		}
 
 		if (data.length() > 0) {
@@ -187,60 +202,72 @@ public class HttpsClient {
 			wr.flush();
 		}
 
-		int lenghtOfFile = conn.getContentLength();
-
-		// download the file
-		InputStream input = new BufferedInputStream(conn.getInputStream(),8192);
-
-		// Output stream
-		FileOutputStream output = new FileOutputStream(outputPath);
-
-		byte buf[] = new byte[1024];
-
-		long total = 0;
-		int count;
-
-		while ((count = input.read(buf)) != -1) {
-			total += count;
-			// publishing the progress....
-			// After this onProgressUpdate will be called
-			//publishProgress("" + (int) ((total * 100) / lenghtOfFile));
+		return conn;
+	}
 
-			// writing data to
-			//Log.d("file", new String(buf));
-			output.write(buf, 0, count);
+	/**
+	 * Downloads into outputPath. The data goes to a .part file first, which is kept if the download fails
+	 * and continued with a range request by the next call for the same path. There is no validator in the request,
+	 * so callers delete the .part file when the file gets a new version on the server.
+	 */
+	public static void downloadFile(String urlStr, HashMap<String, String> params, String outputPath) throws IOException, NoSuchAlgorithmException, KeyManagementException {
+		File partFile = new File(outputPath + PART_FILE_SUFFIX);
+		try (FileDownloadTarget target = new FileDownloadTarget(partFile)) {
+			download(urlStr, params, target);
 		}
 
-		// flushing output
-		output.flush();
-
-		// closing streams
-		output.close();
-		input.close();
-
+		File outputFile = new File(outputPath);
+		if(outputFile.exists() && !outputFile.delete()){
+			throw new IOException("Unable to replace " + outputPath);
+		}
+		if(!partFile.renameTo(outputFile)){
+			throw new IOException("Unable to move downloaded file to " + outputPath);
+		}
 	}
 
 	public static byte[] getFileAsByteArray(String urlStr, HashMap<String, String> params) throws IOException, NoSuchAlgorithmException, KeyManagementException {
-		Log.e("url", urlStr);
-		URL url = new URL(urlStr);
-		HttpsURLConnection conn = (HttpsURLConnection) url.openConnection();
-
-		// Create the SSL connection
-		SSLContext sc;
-		sc = SSLContext.getInstance("TLS");
-		if(BuildConfig.ALLOW_INSECURE_TLS) {
-			sc.init(null, getTrustingManager(), new java.security.SecureRandom());
-			conn.setHostnameVerifier((s, sslSession) -> true);
+		try (MemoryDownloadTarget target = new MemoryDownloadTarget()) {
+			download(urlStr, params, target);
+			return target.toByteArray();
 		}
-		else{
-			sc.init(null, null, new java.security.SecureRandom());
+	}
+
+	/**
+	 * Downloads into the target, retrying a few times on network and server errors. Every retry asks only for the bytes
+	 * the target does not have yet. If the server does not honor the range, or reports another file size than
+	 * in an earlier attempt, the target is started over.
+	 */
+	private static void download(String urlStr, HashMap<String, String> params, DownloadTarget target) throws IOException, NoSuchAlgorithmException, KeyManagementException {
+		IOException lastError = null;
+		for(int attempt = 0; attempt < DOWNLOAD_ATTEMPTS; attempt++) {
+			if(attempt > 0){
+				try {
+					Thread.sleep(DOWNLOAD_RETRY_DELAY * attempt);
+				}
+				catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+			}
+			try {
+				downloadAttempt(urlStr, params, target);
+				return;
+			}
+			catch (DownloadRefusedException e) {
+				// The server refused the request, trying again won't help
+				throw e;
+			}
+			catch (IOException e) {
+				Log.d("download", "attempt " + (attempt + 1) + " failed at " + target.getSize() + " - " + e.getMessage());
+				lastError = e;
+			}
 		}
-		conn.setSSLSocketFactory(sc.getSocketFactory());
+		throw lastError;
+	}
 
-		// Use this if you need SSL authentication
-		//String userpass = user + ":" + password;
-		//String basicAuth = "Basic " + Base64.encodeToString(userpass.getBytes(), Base64.DEFAULT);
-		//conn.setRequestProperty("Authorization", basicAuth);
+	private static void downloadAttempt(String urlStr, HashMap<String, String> params, DownloadTarget target) throws IOException, NoSuchAlgorithmException, KeyManagementException {
+		Log.e("url", urlStr);
+		long offset = target.getSize();
+		HttpsURLConnection conn = openConnection(new URL(urlStr));
 
 		// set Timeout and method
 		conn.setReadTimeout(60000);
@@ -248,6 +275,9 @@ public class HttpsClient {
 		conn.setRequestMethod("POST");
 		conn.setDoInput(true);
 		conn.setDoOutput(true);
+		if(offset > 0) {
+			conn.setRequestProperty("Range", "bytes=" + offset + "-");
+		}
 
 		// Insert app version to all requests
 		if(params == null){
@@ -257,7 +287,7 @@ public class HttpsClient {
 		// Add any data you wish to post here
 		String data = "";
 		for (String key : params.keySet()) {
-			Log.d("param" , key + " - " + params.get(key));
+			Log.d("param", key + " = " + params.get(key));
 			data += URLEncoder.encode(key, "UTF-8") + "=" + URLEncoder.encode(params.get(key), "UTF-8") + "&";
 		}
 
@@ -270,33 +300,166 @@ public class HttpsClient {
 			wr.flush();
 		}
 
-		int lenghtOfFile = conn.getContentLength();
+		int responseCode = conn.getResponseCode();
+		long expectedSize = -1;
+		if(responseCode == HttpURLConnection.HTTP_PARTIAL){
+			String contentRange = conn.getHeaderField("Content-Range");
+			Matcher matcher = CONTENT_RANGE_HEADER.matcher(contentRange != null ? contentRange : "");
+			if(!matcher.matches() || Long.parseLong(matcher.group(1)) != offset){
+				conn.disconnect();
+				target.truncate();
+				throw new IOException("Unexpected Content-Range " + contentRange);
+			}
+			if(!matcher.group(3).equals("*")) {
+				expectedSize = Long.parseLong(matcher.group(3));
+				if(Long.parseLong(matcher.group(2)) != expectedSize - 1 || (target.fileSize >= 0 && expectedSize != target.fileSize)){
+					// The file has changed on the server since the earlier attempt, what we have belongs to the old one
+					String message = "Unexpected Content-Range " + contentRange + " for a file of " + target.fileSize;
+					conn.disconnect();
+					target.truncate();
+					target.fileSize = -1;
+					throw new IOException(message);
+				}
+			}
+		}
+		else if(responseCode == HttpURLConnection.HTTP_OK){
+			if(offset > 0) {
+				// Range was ignored, the whole file is coming again
+				target.truncate();
+			}
+			long contentLength = getContentLength(conn);
+			if(contentLength >= 0){
+				expectedSize = contentLength;
+			}
+		}
+		else if(responseCode == 416 && offset > 0){
+			// Everything was already downloaded if the file is as long as what we have
+			String contentRange = conn.getHeaderField("Content-Range");
+			conn.disconnect();
+			Matcher matcher = CONTENT_RANGE_UNSATISFIABLE.matcher(contentRange != null ? contentRange : "");
+			if(matcher.matches() && Long.parseLong(matcher.group(1)) == offset && (target.fileSize < 0 || target.fileSize == offset)){
+				return;
+			}
+			target.truncate();
+			throw new IOException("Range not satisfiable " + contentRange);
+		}
+		else if(responseCode >= 500){
+			// Overloaded or restarting server, worth another attempt
+			conn.disconnect();
+			throw new IOException("Server error " + responseCode);
+		}
+		else{
+			conn.disconnect();
+			throw new DownloadRefusedException("Download failed with code " + responseCode);
+		}
+		target.fileSize = expectedSize;
+
+		try (InputStream input = conn.getInputStream()) {
+			byte[] buf = new byte[DOWNLOAD_BUFFER_SIZE];
+			int count;
+			while ((count = input.read(buf)) != -1) {
+				target.write(buf, count);
+			}
+		}
+
+		if(expectedSize >= 0 && target.getSize() != expectedSize){
+			throw new EOFException("Download ended at " + target.getSize() + " of " + expectedSize);
+		}
+	}
+
+	private static long getContentLength(HttpURLConnection conn){
+		String contentLength = conn.getHeaderField("Content-Length");
+		if(contentLength == null){
+			return -1;
+		}
+		try {
+			return Long.parseLong(contentLength);
+		}
+		catch (NumberFormatException e){
+			return -1;
+		}
+	}
+
+	/**
+	 * The server refused the request with a client error code. Dropped connections and server errors throw other
+	 * IOExceptions, also ProtocolException for an unexpected end of stream, and are retried.
+	 */
+	private static class DownloadRefusedException extends IOException {
+		private DownloadRefusedException(String message){
+			super(message);
+		}
+	}
+
+	private static abstract class DownloadTarget implements Closeable {
+		// Size of the whole file as reported by the server, -1 if not known
+		private long fileSize = -1;
 
-		// download the file
-		InputStream input = new BufferedInputStream(conn.getInputStream(),8192);
+		public abstract long getSize();
+		public abstract void truncate() throws IOException;
+		public abstract void write(byte[] buf, int length) throws IOException;
+	}
 
-		// Output stream
-		ByteArrayOutputStream output = new ByteArrayOutputStream();
+	private static class FileDownloadTarget extends DownloadTarget {
+		private final File file;
+		private FileOutputStream out;
 
-		byte buf[] = new byte[1024];
+		private FileDownloadTarget(File file){
+			this.file = file;
+		}
 
-		long total = 0;
-		int count;
+		@Override
+		public long getSize() {
+			return file.length();
+		}
 
-		while ((count = input.read(buf)) != -1) {
-			total += count;
-			// publishing the progress....
-			// After this onProgressUpdate will be called
-			//publishProgress("" + (int) ((total * 100) / lenghtOfFile));
+		@Override
+		public void truncate() throws IOException {
+			close();
+			new FileOutputStream(file).close();
+		}
 
-			// writing data to file
-			output.write(buf, 0, count);
+		@Override
+		public void write(byte[] buf, int length) throws IOException {
+			if(out == null){
+				out = new FileOutputStream(file, true);
+			}
+			out.write(buf, 0, length);
 		}
 
-		// closing streams
-		input.close();
+		@Override
+		public void close() throws IOException {
+			if(out != null){
+				out.close();
+				out = null;
+			}
+		}
+	}
 
-		return output.toByteArray();
+	private static class MemoryDownloadTarget extends DownloadTarget {
+		private final ByteArrayOutputStream out = new ByteArrayOutputStream(DOWNLOAD_BUFFER_SIZE);
+
+		@Override
+		public long getSize() {
+			return out.size();
+		}
+
+		@Override
+		public void truncate() {
+			out.reset();
+		}
+
+		@Override
+		public void write(byte[] buf, int length) {
+			out.write(buf, 0, length);
+		}
+
+		private byte[] toByteArray(){
+			return out.toByteArray();
+		}
+
+		@Override
+		public void close() {
+		}
 	}
 
 	public static JSONObject multipartUpload(String urlTo, HashMap<String, String> params, FileToUpload file)  {
@@ -318,7 +481,7 @@ public class HttpsClient {
 
 		String result = "";
 
-		int bytesRead, bytesAvailable, bufferSize;
+		int bytesRead;
 		byte[] buffer;
 		int maxBufferSize = 1024 * 1024;
 
@@ -326,19 +489,7 @@ public class HttpsClient {
 
 		try {
 			URL url = new URL(urlTo);
-			connection = (HttpsURLConnection) url.openConnection();
-
-			// Create the SSL connection
-			SSLContext sc;
-			sc = SSLContext.getInstance("TLS");
-			if(BuildConfig.ALLOW_INSECURE_TLS) {
-				sc.init(null, getTrustingManager(), new java.security.SecureRandom());
-				connection.setHostnameVerifier((s, sslSession) -> true);
-			}
-			else{
-				sc.init(null, null, new java.security.SecureRandom());
-			}
-			connection.setSSLSocketFactory(sc.getSocketFactory());
+			connection = openConnection(url);
 
 			connection.setDoInput(true);
 			connection.setDoOutput(true);
@@ -356,6 +507,13 @@ public class HttpsClient {
 				int idx = q.length - 1;
 
 				FileInputStream fileInputStream = new FileInputStream(file.filePath);
+				long remaining = file.length;
+				if(remaining < 0){
+					remaining = fileInputStream.getChannel().size() - file.offset;
+				}
+				if(file.offset > 0){
+					fileInputStream.getChannel().position(file.offset);
+				}
 
 				outputStream = new DataOutputStream(connection.getOutputStream());
 				outputStream.writeBytes(twoHyphens + boundary + lineEnd);
@@ -365,16 +523,15 @@ public class HttpsClient {
 
 				outputStream.writeBytes(lineEnd);
 
-				bytesAvailable = fileInputStream.available();
-				bufferSize = Math.min(bytesAvailable, maxBufferSize);
-				buffer = new byte[bufferSize];
-
-				bytesRead = fileInputStream.read(buffer, 0, bufferSize);
-				while (bytesRead > 0) {
-					outputStream.write(buffer, 0, bufferSize);
-					bytesAvailable = fileInputStream.available();
-					bufferSize = Math.min(bytesAvailable, maxBufferSize);
-					bytesRead = fileInputStream.read(buffer, 0, bufferSize);
+				buffer = new byte[(int) Math.max(1, Math.min(remaining, maxBufferSize))];
+				while (remaining > 0) {
+					bytesRead = fileInputStream.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+					if(bytesRead < 0){
+						fileInputStream.close();
+						throw new IOException("Unexpected end of file " + file.filePath);
+					}
+					outputStream.write(buffer, 0, bytesRead);
+					remaining -= bytesRead;
 				}
 
 				outputStream.writeBytes(lineEnd);
@@ -528,12 +685,23 @@ public class HttpsClient {
 		public String name;
 		public String filePath;
 		public String mimeType;
+		public long offset = 0;
+		public long length = -1;
 
 		public FileToUpload(String name, String filePath, String mimeType){
 			this.name = name;
 			this.filePath = filePath;
 			this.mimeType = mimeType;
 		}
+
+		/**
+		 * Uploads only length bytes of the file starting at offset
+		 */
+		public FileToUpload(String name, String filePath, String mimeType, long offset, long length){
+			this(name, filePath, mimeType);
+			this.offset = offset;
+			this.length = length;
+		}
 	}
 
 }
@@ -30,6 +30,7 @@ import org.stingle.photos.Auth.PasswordReturnListener;
 import org.stingle.photos.Files.FileManager;
 import org.stingle.photos.Sync.SyncManager;
 import org.stingle.photos.Util.Helpers;
+import org.stingle.photos.Video.EncryptedFrameCache;
 
 import java.io.File;
 
@@ -368,6 +369,8 @@ public class SettingsActivity extends AppCompatActivity implements
 			resyncDBPref.setOnPreferenceClickListener(preference -> {
 				final ProgressDialog spinner = Helpers.showProgressDialog(getContext(), getString(R.string.syncing_db), null);
 
+				SyncManager.resetSeenTimes(getContext());
+
 				(new FsSyncAsyncTask(getContext(), new SyncManager.OnFinish() {
 					@Override
 					public void onFinish(Boolean needToUpdateUI) {
@@ -375,13 +378,6 @@ public class SettingsActivity extends AppCompatActivity implements
 					}
 				})).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
 
-				Helpers.deletePreference(getContext(), SyncManager.PREF_LAST_SEEN_TIME);
-				Helpers.deletePreference(getContext(), SyncManager.PREF_TRASH_LAST_SEEN_TIME);
-				Helpers.deletePreference(getContext(), SyncManager.PREF_ALBUMS_LAST_SEEN_TIME);
-				Helpers.deletePreference(getContext(), SyncManager.PREF_ALBUM_FILES_LAST_SEEN_TIME);
-				Helpers.deletePreference(getContext(), SyncManager.PREF_LAST_DEL_SEEN_TIME);
-				Helpers.deletePreference(getContext(), SyncManager.PREF_LAST_CONTACTS_SEEN_TIME);
-
 				return true;
 			});
 		}
@@ -403,6 +399,7 @@ public class SettingsActivity extends AppCompatActivity implements
 								public Object execute(Context context) {
 									File cacheDir = new File(context.getCacheDir().getPath() + "/" + FileManager.THUMB_CACHE_DIR);
 									Helpers.deleteFolderRecursive(cacheDir);
+									EncryptedFrameCache.getInstance(context).clear();
 									return true;
 								}
 							});
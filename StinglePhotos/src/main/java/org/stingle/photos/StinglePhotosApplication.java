@@ -7,11 +7,14 @@ import android.os.Bundle;
 
 import androidx.preference.PreferenceManager;
 
+import org.stingle.photos.Net.HttpsClient;
 import org.stingle.photos.Sync.SyncAsyncTask;
 import org.stingle.photos.Crypto.Crypto;
+import org.stingle.photos.Crypto.HeaderCache;
 import org.stingle.photos.Sync.SyncManager;
 import org.stingle.photos.Util.Helpers;
 import org.stingle.photos.Util.MemoryCache;
+import org.stingle.photos.Crypto.AlbumKeyring;
 
 import java.util.HashMap;
 
@@ -32,6 +35,8 @@ public class StinglePhotosApplication extends Application{
 	private static Context context;
 	private static MemoryCache cache;
 	private static Crypto crypto;
+	private static HeaderCache headerCache = new HeaderCache();
+	private static AlbumKeyring albumKeyring = new AlbumKeyring();
 	private static HashMap<String, String> tempStore = new HashMap<>();
 
     public static final String DEFAULT_PREFS = "default_prefs";
@@ -53,6 +58,7 @@ public class StinglePhotosApplication extends Application{
     @Override
 	public void onCreate(){
         super.onCreate();
+        HttpsClient.setupConnectionPool();
         StinglePhotosApplication.context = getApplicationContext();
         StinglePhotosApplication.cache = new MemoryCache();
         StinglePhotosApplication.crypto = new Crypto(getApplicationContext());
@@ -73,12 +79,24 @@ public class StinglePhotosApplication extends Application{
     public static MemoryCache getCache() {
         return StinglePhotosApplication.cache;
     }
+
+    public static HeaderCache getHeaderCache() {
+        return StinglePhotosApplication.headerCache;
+    }
+
+    public static AlbumKeyring getAlbumKeyring() {
+        return StinglePhotosApplication.albumKeyring;
+    }
 	
 	public static byte[] getKey(){
         return key;
 	}
 	
 	public static void setKey(byte[] pKey){
+		if(key != pKey){
+			headerCache.clear();
+			albumKeyring.clear();
+		}
 		key = pKey;
 	}
 
@@ -0,0 +1,33 @@
+package org.stingle.photos.Sync;
+
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import org.stingle.photos.Sync.SyncSteps.IntegrityScrub;
+
+public class IntegrityWorker extends Worker {
+
+	private IntegrityScrub scrub;
+
+	public IntegrityWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
+		super(context, workerParams);
+		scrub = new IntegrityScrub(context);
+	}
+
+	@NonNull
+	@Override
+	public Result doWork() {
+		scrub.scrub();
+		return Result.success();
+	}
+
+	@Override
+	public void onStopped() {
+		super.onStopped();
+		scrub.stop();
+	}
+}
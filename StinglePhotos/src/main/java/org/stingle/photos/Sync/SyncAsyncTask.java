@@ -9,6 +9,7 @@ import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import org.stingle.photos.AsyncTasks.OnAsyncTaskFinish;
 import org.stingle.photos.Auth.LoginManager;
 import org.stingle.photos.StinglePhotosApplication;
+import org.stingle.photos.Sync.SyncSteps.DownloadQueue;
 import org.stingle.photos.Sync.SyncSteps.FSSync;
 import org.stingle.photos.Sync.SyncSteps.ImportMedia;
 import org.stingle.photos.Sync.SyncSteps.SyncCloudToLocalDb;
@@ -67,9 +68,11 @@ public class SyncAsyncTask extends AsyncTask<Void, Void, Boolean> {
 		switch (mode){
 			case MODE_FULL:
 				syncCloudToLocalDb(context);
+				downloadThumbs(context);
 				FSSync(context);
 				autoImport(context);
 				upload(context);
+				downloadOriginals(context);
 				break;
 			case MODE_IMPORT_AND_UPLOAD:
 				autoImport(context);
@@ -77,10 +80,14 @@ public class SyncAsyncTask extends AsyncTask<Void, Void, Boolean> {
 				break;
 			case MODE_CLOUD_TO_LOCAL:
 				syncCloudToLocalDb(context);
+				downloadThumbs(context);
+				downloadOriginals(context);
 				break;
 			case MODE_CLOUD_TO_LOCAL_AND_UPLOAD:
 				syncCloudToLocalDb(context);
+				downloadThumbs(context);
 				upload(context);
+				downloadOriginals(context);
 				break;
 		}
 
@@ -116,6 +123,17 @@ public class SyncAsyncTask extends AsyncTask<Void, Void, Boolean> {
 
 	}
 
+	public void downloadThumbs(Context context){
+		boolean needToUpdateUI = (new DownloadQueue(context, this)).downloadThumbs();
+		if (needToUpdateUI){
+			LocalBroadcastManager.getInstance(context).sendBroadcast(new Intent("REFRESH_GALLERY"));
+		}
+	}
+
+	public void downloadOriginals(Context context){
+		(new DownloadQueue(context, this)).downloadOriginals();
+	}
+
 
 
 	@Override
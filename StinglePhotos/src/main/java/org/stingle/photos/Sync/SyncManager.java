@@ -30,14 +30,21 @@ import org.stingle.photos.Db.Objects.StingleDbFile;
 import org.stingle.photos.Db.Query.AlbumFilesDb;
 import org.stingle.photos.Db.Query.AlbumsDb;
 import org.stingle.photos.Db.Query.ContactsDb;
+import org.stingle.photos.Db.Query.DownloadQueueDb;
 import org.stingle.photos.Db.Query.FilesDb;
 import org.stingle.photos.Db.Query.GalleryTrashDb;
 import org.stingle.photos.Db.Query.ImportedIdsDb;
+import org.stingle.photos.Db.Query.IntegrityDb;
+import org.stingle.photos.Db.Query.SyncJournalDb;
+import org.stingle.photos.Db.Query.UploadQueueDb;
+import org.stingle.photos.Db.Query.UploadSessionsDb;
 import org.stingle.photos.Db.StingleDb;
+import org.stingle.photos.Db.StingleDbContract;
 import org.stingle.photos.Net.HttpsClient;
 import org.stingle.photos.Net.StingleResponse;
 import org.stingle.photos.R;
 import org.stingle.photos.StinglePhotosApplication;
+import org.stingle.photos.Sync.SyncSteps.IntegrityScrub;
 import org.stingle.photos.Util.Helpers;
 
 import java.io.IOException;
@@ -88,9 +95,9 @@ public class SyncManager {
 
 	public static final String SP_FILE_MIME_TYPE = "application/stinglephoto";
 
-	public static final int GALLERY = 0;
-	public static final int TRASH = 1;
-	public static final int ALBUM = 2;
+	public static final int GALLERY = StingleDbContract.SET_GALLERY;
+	public static final int TRASH = StingleDbContract.SET_TRASH;
+	public static final int ALBUM = StingleDbContract.SET_ALBUM;
 
 	public static final int DELETE_EVENT_MAIN = 1;
 	public static final int DELETE_EVENT_TRASH = 2;
@@ -170,14 +177,28 @@ public class SyncManager {
 		public abstract void onFinish(Boolean needToUpdateUI);
 	}
 
-	public static void resetAndStopSync(Context context) {
+	/**
+	 * Makes the next sync fetch everything from the server again. The sync journal is cleared too,
+	 * otherwise sync continues from its checkpoints.
+	 */
+	public static void resetSeenTimes(Context context) {
 		Helpers.deletePreference(context, SyncManager.PREF_LAST_SEEN_TIME);
 		Helpers.deletePreference(context, SyncManager.PREF_LAST_DEL_SEEN_TIME);
 		Helpers.deletePreference(context, SyncManager.PREF_TRASH_LAST_SEEN_TIME);
 		Helpers.deletePreference(context, SyncManager.PREF_ALBUMS_LAST_SEEN_TIME);
 		Helpers.deletePreference(context, SyncManager.PREF_ALBUM_FILES_LAST_SEEN_TIME);
 		Helpers.deletePreference(context, SyncManager.PREF_LAST_CONTACTS_SEEN_TIME);
+
+		SyncJournalDb syncJournalDb = new SyncJournalDb(context);
+		syncJournalDb.truncateTable();
+		syncJournalDb.close();
+	}
+
+	public static void resetAndStopSync(Context context) {
+		resetSeenTimes(context);
 		Helpers.deletePreference(context, SyncManager.PREF_FIRST_SYNC_DONE);
+		Helpers.deletePreference(context, IntegrityScrub.PREF_CHECKPOINT);
+		Helpers.deletePreference(context, IntegrityScrub.PREF_LAST_FINISHED);
 
 		GalleryTrashDb galleryDb = new GalleryTrashDb(context, SyncManager.GALLERY);
 		galleryDb.truncateTable();
@@ -199,6 +220,22 @@ public class SyncManager {
 		contactsDb.truncateTable();
 		contactsDb.close();
 
+		IntegrityDb integrityDb = new IntegrityDb(context);
+		integrityDb.truncateTable();
+		integrityDb.close();
+
+		UploadSessionsDb uploadSessionsDb = new UploadSessionsDb(context);
+		uploadSessionsDb.truncateTable();
+		uploadSessionsDb.close();
+
+		DownloadQueueDb downloadQueueDb = new DownloadQueueDb(context);
+		downloadQueueDb.truncateTable();
+		downloadQueueDb.close();
+
+		UploadQueueDb uploadQueueDb = new UploadQueueDb(context);
+		uploadQueueDb.truncateTable();
+		uploadQueueDb.close();
+
 		// Auto import reset
 		PreferenceManager.getDefaultSharedPreferences(context).edit()
 				.remove(SyncManager.PREF_IMPORT_ENABLED)
@@ -740,6 +777,20 @@ public class SyncManager {
 				periodicSyncDataWork //work request
 		);
 
+		Constraints integrityConstraints = new Constraints.Builder()
+				.setRequiresBatteryNotLow(true)
+				.build();
+
+		PeriodicWorkRequest integrityWork =
+				new PeriodicWorkRequest.Builder(IntegrityWorker.class, 1, TimeUnit.DAYS)
+						.addTag("integrity")
+						.setConstraints(integrityConstraints)
+						.build();
+		workManager.enqueueUniquePeriodicWork(
+				"SPIntegrity",
+				ExistingPeriodicWorkPolicy.KEEP,
+				integrityWork
+		);
 	}
 
 }
@@ -0,0 +1,145 @@
+package org.stingle.photos.Sync.SyncSteps;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.util.Log;
+
+import org.stingle.photos.Auth.LoginManager;
+import org.stingle.photos.Db.Query.DownloadQueueDb;
+import org.stingle.photos.Files.FileManager;
+import org.stingle.photos.Sync.SyncManager;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Downloads new versions of files which SyncCloudToLocalDb has put in the download queue, a few at the same time.
+ *
+ * Thumbnails are downloaded right after the cloud changes are applied. Originals are downloaded when sync has nothing
+ * else to do. A file opened before its turn is shown from the server, see isQueued.
+ */
+public class DownloadQueue {
+
+	public static final int WORKERS = 3;
+
+	private static final int PAGE_SIZE = 30;
+	private static final int MAX_ATTEMPTS = 5;
+
+	private Context context;
+	private AsyncTask<?,?,?> task;
+
+	public DownloadQueue(Context context, AsyncTask<?,?,?> task){
+		this.context = context;
+		this.task = task;
+	}
+
+	/**
+	 * @return true if any thumbnail was downloaded
+	 */
+	public boolean downloadThumbs(){
+		return download(true);
+	}
+
+	/**
+	 * @return true if any original was downloaded
+	 */
+	public boolean downloadOriginals(){
+		return download(false);
+	}
+
+	private boolean download(boolean isThumb){
+		if(!LoginManager.isLoggedIn(context)) {
+			return false;
+		}
+
+		boolean isAnyDownloaded = false;
+		DownloadQueueDb db = new DownloadQueueDb(context);
+		ExecutorService executor = Executors.newFixedThreadPool(WORKERS);
+		try {
+			long lastId = 0;
+			ArrayList<DownloadQueueDb.Item> items;
+			while (!(items = db.getItems(isThumb, lastId, PAGE_SIZE)).isEmpty()) {
+				if (task != null && task.isCancelled()) {
+					break;
+				}
+
+				ArrayList<Future<Boolean>> results = new ArrayList<>();
+				for (DownloadQueueDb.Item item : items) {
+					results.add(executor.submit(() -> fetch(context, item)));
+					lastId = item.id;
+				}
+
+				// The queue is only written from this thread
+				for (int i = 0; i < items.size(); i++) {
+					boolean isDownloaded;
+					try {
+						isDownloaded = results.get(i).get();
+					}
+					catch (ExecutionException e) {
+						e.printStackTrace();
+						isDownloaded = false;
+					}
+					finishItem(db, items.get(i), isDownloaded);
+					if (isDownloaded) {
+						isAnyDownloaded = true;
+					}
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			executor.shutdownNow();
+			db.close();
+		}
+
+		return isAnyDownloaded;
+	}
+
+	/**
+	 * @return true if a newer version of the file is waiting in the queue, so the local copy doesn't match its headers
+	 */
+	public static boolean isQueued(Context context, String filename, int set, boolean isThumb){
+		DownloadQueueDb db = new DownloadQueueDb(context);
+		try {
+			return db.getItem(filename, set, isThumb) != null;
+		}
+		finally {
+			db.close();
+		}
+	}
+
+	private static boolean fetch(Context context, DownloadQueueDb.Item item){
+		String path;
+		if (item.isThumb) {
+			path = FileManager.getThumbsDir(context) + "/" + item.filename;
+		}
+		else {
+			path = FileManager.getHomeDir(context) + "/" + item.filename;
+			if (!new File(path).exists()) {
+				// Not kept on the device anymore, the original is downloaded when it is opened
+				return true;
+			}
+		}
+
+		boolean isDownloaded = SyncManager.downloadFile(context, item.filename, path, item.isThumb, item.set);
+		if (!isDownloaded) {
+			Log.d("download", "queued download failed - " + item.filename + (item.isThumb ? " thumb" : ""));
+		}
+		return isDownloaded;
+	}
+
+	private static void finishItem(DownloadQueueDb db, DownloadQueueDb.Item item, boolean isDownloaded){
+		if (isDownloaded || item.attempts + 1 >= MAX_ATTEMPTS) {
+			db.deleteItem(item.id);
+		}
+		else {
+			db.setAttempts(item.id, item.attempts + 1);
+		}
+	}
+}
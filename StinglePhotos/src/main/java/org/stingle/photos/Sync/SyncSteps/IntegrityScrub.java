@@ -0,0 +1,310 @@
+package org.stingle.photos.Sync.SyncSteps;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.util.Log;
+
+import org.stingle.photos.Auth.LoginManager;
+import org.stingle.photos.Crypto.ChunkPipeline;
+import org.stingle.photos.Crypto.Crypto;
+import org.stingle.photos.Crypto.CryptoException;
+import org.stingle.photos.Crypto.CryptoHelpers;
+import org.stingle.photos.Db.Objects.StingleDbFile;
+import org.stingle.photos.Db.Query.AlbumFilesDb;
+import org.stingle.photos.Db.Query.DownloadQueueDb;
+import org.stingle.photos.Db.Query.FilesDb;
+import org.stingle.photos.Db.Query.GalleryTrashDb;
+import org.stingle.photos.Db.Query.IntegrityDb;
+import org.stingle.photos.Files.FileManager;
+import org.stingle.photos.StinglePhotosApplication;
+import org.stingle.photos.Sync.SyncManager;
+import org.stingle.photos.Util.Helpers;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Walks the local encrypted files and thumbnails and authenticates every chunk of them.
+ *
+ * Files are processed in filename order and the last finished filename is stored as a checkpoint,
+ * so a stopped scrub continues where it left off. Files which were verified recently and did not change are skipped.
+ * While charging several files are verified in parallel, otherwise one at a time with a pause after each file.
+ * A local file or thumbnail which fails authentication is downloaded again if the file is also in the cloud.
+ * Each copy is judged on its own, a corrupt thumbnail never removes a good original.
+ */
+public class IntegrityScrub {
+
+	public static final String PREF_CHECKPOINT = "integrity_checkpoint";
+	public static final String PREF_LAST_FINISHED = "integrity_last_finished";
+
+	private static final long RECHECK_INTERVAL = 30L * 24 * 60 * 60 * 1000;
+
+	private Context context;
+	private Crypto crypto;
+	private File dir;
+	private File thumbDir;
+	private IntegrityDb integrityDb;
+	private GalleryTrashDb galleryDb;
+	private GalleryTrashDb trashDb;
+	private AlbumFilesDb albumFilesDb;
+	private DownloadQueueDb downloadQueueDb;
+	private volatile boolean isStopped = false;
+
+	public IntegrityScrub(Context context){
+		this.context = context;
+		this.crypto = StinglePhotosApplication.getCrypto();
+		dir = new File(FileManager.getHomeDir(context));
+		thumbDir = new File(FileManager.getThumbsDir(context));
+	}
+
+	public void stop(){
+		isStopped = true;
+	}
+
+	/**
+	 * @return true if all files were checked, false if the scrub was stopped or could not run
+	 */
+	public boolean scrub(){
+		if(!LoginManager.isLoggedIn(context) || StinglePhotosApplication.getKey() == null) {
+			return false;
+		}
+
+		TreeSet<String> filenames = new TreeSet<>();
+		addFilenames(filenames, dir);
+		addFilenames(filenames, thumbDir);
+
+		String checkpoint = Helpers.getPreference(context, PREF_CHECKPOINT, "");
+		List<String> toCheck = new ArrayList<>(checkpoint.length() > 0 ? filenames.tailSet(checkpoint, false) : filenames);
+
+		Log.d("integrity", "checking " + toCheck.size() + " of " + filenames.size() + " files");
+
+		integrityDb = new IntegrityDb(context);
+		galleryDb = new GalleryTrashDb(context, SyncManager.GALLERY);
+		trashDb = new GalleryTrashDb(context, SyncManager.TRASH);
+		albumFilesDb = new AlbumFilesDb(context);
+		downloadQueueDb = new DownloadQueueDb(context);
+		ExecutorService executor = null;
+		try {
+			int pos = 0;
+			while (pos < toCheck.size()) {
+				if(isStopped){
+					return false;
+				}
+
+				boolean isCharging = isCharging();
+				int batchSize = 1;
+				if(isCharging){
+					if(executor == null){
+						executor = Executors.newFixedThreadPool(ChunkPipeline.getParallelism());
+					}
+					batchSize = ChunkPipeline.getParallelism() * 2;
+				}
+
+				List<String> batch = toCheck.subList(pos, Math.min(pos + batchSize, toCheck.size()));
+				long startTime = System.currentTimeMillis();
+
+				if(isCharging) {
+					List<Future<?>> futures = new ArrayList<>();
+					for (final String filename : batch) {
+						futures.add(executor.submit(() -> checkFile(filename)));
+					}
+					for (Future<?> future : futures) {
+						try {
+							future.get();
+						}
+						catch (ExecutionException e) {
+							e.printStackTrace();
+						}
+					}
+				}
+				else{
+					checkFile(batch.get(0));
+
+					// Leave the CPU idle for as long as the check took
+					Thread.sleep(System.currentTimeMillis() - startTime);
+				}
+
+				pos += batch.size();
+				Helpers.storePreference(context, PREF_CHECKPOINT, batch.get(batch.size() - 1));
+			}
+		}
+		catch (InterruptedException e) {
+			return false;
+		}
+		finally {
+			if(executor != null){
+				executor.shutdownNow();
+			}
+			integrityDb.close();
+			galleryDb.close();
+			trashDb.close();
+			albumFilesDb.close();
+			downloadQueueDb.close();
+		}
+
+		Helpers.deletePreference(context, PREF_CHECKPOINT);
+		Helpers.storePreference(context, PREF_LAST_FINISHED, System.currentTimeMillis());
+		Log.d("integrity", "finished");
+
+		return true;
+	}
+
+	private void addFilenames(TreeSet<String> filenames, File directory){
+		File[] files = directory.listFiles();
+		if(files == null){
+			return;
+		}
+		for (File file : files) {
+			if (file.isFile() && file.getName().endsWith(StinglePhotosApplication.FILE_EXTENSION)) {
+				filenames.add(file.getName());
+			}
+		}
+	}
+
+	private void checkFile(String filename){
+		if(isStopped){
+			return;
+		}
+
+		FilesDb db = galleryDb;
+		int set = SyncManager.GALLERY;
+		StingleDbFile dbFile = galleryDb.getFileIfExists(filename);
+		if(dbFile == null && (dbFile = trashDb.getFileIfExists(filename)) != null){
+			db = trashDb;
+			set = SyncManager.TRASH;
+		}
+		if(dbFile == null && (dbFile = albumFilesDb.getFileIfExists(filename)) != null){
+			db = albumFilesDb;
+			set = SyncManager.ALBUM;
+		}
+
+		// While a newer version waits in the download queue the local copy still belongs to the old one
+		int fileStatus = 0;
+		if(dbFile == null || downloadQueueDb.getItem(filename, set, false) == null) {
+			fileStatus = checkFile(dbFile, set, new File(dir, filename), false);
+		}
+		int thumbStatus = 0;
+		if(dbFile == null || downloadQueueDb.getItem(filename, set, true) == null) {
+			thumbStatus = checkFile(dbFile, set, new File(thumbDir, filename), true);
+		}
+
+		if(dbFile != null && dbFile.isRemote){
+			if(fileStatus == IntegrityDb.STATUS_CORRUPT){
+				dropLocalFile(db, dbFile);
+			}
+			if(thumbStatus == IntegrityDb.STATUS_CORRUPT){
+				downloadThumbAgain(dbFile, set);
+			}
+		}
+	}
+
+	private int checkFile(StingleDbFile dbFile, int set, File file, boolean isThumb){
+		if(!file.exists()){
+			return 0;
+		}
+
+		long fileSize = file.length();
+		long lastModified = file.lastModified();
+		if(integrityDb.isVerified(file.getName(), isThumb, fileSize, lastModified, System.currentTimeMillis() - RECHECK_INTERVAL)){
+			return IntegrityDb.STATUS_OK;
+		}
+
+		Crypto.Header header = null;
+		if(dbFile != null && dbFile.headers != null) {
+			try {
+				header = CryptoHelpers.decryptFileHeaders(context, set, dbFile.albumId, dbFile.headers, isThumb);
+			}
+			catch (IOException | CryptoException e) {
+				Log.d("integrity", "no key for " + file.getName());
+				integrityDb.setStatus(file.getName(), isThumb, IntegrityDb.STATUS_NO_KEY, fileSize, lastModified);
+				return IntegrityDb.STATUS_NO_KEY;
+			}
+		}
+
+		int status;
+		try {
+			crypto.verifyFile(new FileInputStream(file), header, null);
+			status = IntegrityDb.STATUS_OK;
+		}
+		catch (Crypto.SizeMismatchException e) {
+			// Every chunk is authentic, the size in the header is wrong. A download would bring the same header back.
+			Log.d("integrity", file.getPath() + " - " + e.getMessage());
+			status = IntegrityDb.STATUS_SIZE_MISMATCH;
+		}
+		catch (IOException | CryptoException e) {
+			if(!file.exists() || file.lastModified() != lastModified){
+				// Deleted or replaced while it was being checked
+				return 0;
+			}
+			if(header != null && !hasFileId(file, header.fileId)){
+				// Not the file the headers were made for, e.g. another version, so it is not deleted as corrupt
+				Log.d("integrity", file.getPath() + " - file id does not match the headers");
+				status = IntegrityDb.STATUS_OTHER_FILE;
+			}
+			else {
+				Log.e("integrity", file.getPath() + " - " + e.getMessage());
+				status = IntegrityDb.STATUS_CORRUPT;
+			}
+		}
+
+		integrityDb.setStatus(file.getName(), isThumb, status, fileSize, lastModified);
+		return status;
+	}
+
+	/**
+	 * @return false only if the file has a readable file id which is not the given one
+	 */
+	private boolean hasFileId(File file, byte[] fileId){
+		try (FileInputStream in = new FileInputStream(file)) {
+			return Arrays.equals(Crypto.readFileId(in), fileId);
+		}
+		catch (IOException | CryptoException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Deletes the corrupt original, it is downloaded again when it is opened
+	 */
+	private void dropLocalFile(FilesDb db, StingleDbFile dbFile){
+		File file = new File(dir, dbFile.filename);
+		if(file.exists() && !file.delete()){
+			return;
+		}
+
+		Log.d("integrity", dbFile.filename + " - dropped local file");
+		if(dbFile.isLocal) {
+			dbFile.isLocal = false;
+			db.updateFile(dbFile);
+		}
+		integrityDb.setStatus(dbFile.filename, false, IntegrityDb.STATUS_REMOVED, 0, 0);
+	}
+
+	/**
+	 * The thumbnail is replaced by the download queue. It is not deleted, FSSync treats a file without a thumbnail as not local.
+	 */
+	private void downloadThumbAgain(StingleDbFile dbFile, int set){
+		Log.d("integrity", dbFile.filename + " - queued thumb download");
+		downloadQueueDb.enqueue(dbFile.filename, set, true);
+	}
+
+	private boolean isCharging(){
+		Intent batteryStatus = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+		if(batteryStatus == null) {
+			return false;
+		}
+		int status = batteryStatus.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+		return status == BatteryManager.BATTERY_STATUS_CHARGING || status == BatteryManager.BATTERY_STATUS_FULL;
+	}
+}
@@ -8,6 +8,8 @@ import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
 import android.os.SystemClock;
+import android.util.JsonReader;
+import android.util.JsonToken;
 import android.util.Log;
 
 import org.json.JSONArray;
@@ -21,30 +23,46 @@ import org.stingle.photos.Db.Objects.StingleDbFile;
 import org.stingle.photos.Db.Query.AlbumFilesDb;
 import org.stingle.photos.Db.Query.AlbumsDb;
 import org.stingle.photos.Db.Query.ContactsDb;
+import org.stingle.photos.Db.Query.DownloadQueueDb;
 import org.stingle.photos.Db.Query.FilesDb;
 import org.stingle.photos.Db.Query.GalleryTrashDb;
+import org.stingle.photos.Db.Query.SyncJournalDb;
 import org.stingle.photos.Files.FileManager;
 import org.stingle.photos.Gallery.Albums.AlbumsFragment;
 import org.stingle.photos.Gallery.Helpers.GalleryHelpers;
 import org.stingle.photos.GalleryActivity;
 import org.stingle.photos.Net.HttpsClient;
-import org.stingle.photos.Net.StingleResponse;
 import org.stingle.photos.R;
 import org.stingle.photos.StinglePhotosApplication;
 import org.stingle.photos.Sync.SyncManager;
 import org.stingle.photos.Util.Helpers;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 
 public class SyncCloudToLocalDb {
 
+	private static final int PAGE_SIZE = 1000;
+	private static final int BATCH_SIZE = 500;
+	private static final String[] SECTIONS = {"files", "trash", "albums", "albumFiles", "deletes", "contacts"};
+
 	private Context context;
 	private final GalleryTrashDb galleryDb;
 	private final GalleryTrashDb trashDb;
 	private final AlbumsDb albumsDb;
 	private final AlbumFilesDb albumFilesDb;
 	private final ContactsDb contactsDb;
+	private final SyncJournalDb syncJournalDb;
+	private final DownloadQueueDb downloadQueueDb;
 	private long lastSeenTime = 0;
 	private long lastTrashSeenTime = 0;
 	private long lastAlbumsSeenTime = 0;
@@ -52,6 +70,8 @@ public class SyncCloudToLocalDb {
 	private long lastDelSeenTime = 0;
 	private long lastContactsSeenTime = 0;
 	private boolean isFirstSyncDone;
+	private boolean hasMorePages = false;
+	private final HashSet<String> pageSections = new HashSet<>();
 
 	public SyncCloudToLocalDb(Context context){
 		this.context = context;
@@ -60,6 +80,8 @@ public class SyncCloudToLocalDb {
 		albumsDb = new AlbumsDb(context);
 		albumFilesDb = new AlbumFilesDb(context);
 		contactsDb = new ContactsDb(context);
+		syncJournalDb = new SyncJournalDb(context);
+		downloadQueueDb = new DownloadQueueDb(context);
 		isFirstSyncDone = Helpers.getPreference(context, SyncManager.PREF_FIRST_SYNC_DONE, false);
 	}
 
@@ -69,25 +91,19 @@ public class SyncCloudToLocalDb {
 		}
 		SyncManager.setSyncStatus(context, SyncManager.STATUS_REFRESHING);
 
-		lastSeenTime = Helpers.getPreference(context, SyncManager.PREF_LAST_SEEN_TIME, (long) 0);
-		lastTrashSeenTime = Helpers.getPreference(context, SyncManager.PREF_TRASH_LAST_SEEN_TIME, (long) 0);
-		lastAlbumsSeenTime = Helpers.getPreference(context, SyncManager.PREF_ALBUMS_LAST_SEEN_TIME, (long) 0);
-		lastAlbumFilesSeenTime = Helpers.getPreference(context, SyncManager.PREF_ALBUM_FILES_LAST_SEEN_TIME, (long) 0);
-		lastDelSeenTime = Helpers.getPreference(context, SyncManager.PREF_LAST_DEL_SEEN_TIME, (long) 0);
-		lastContactsSeenTime = Helpers.getPreference(context, SyncManager.PREF_LAST_CONTACTS_SEEN_TIME, (long) 0);
+		// The journal is ahead of the preferences if the last sync was killed in the middle of a page
+		lastSeenTime = Math.max(Helpers.getPreference(context, SyncManager.PREF_LAST_SEEN_TIME, (long) 0), syncJournalDb.getCheckpoint("files"));
+		lastTrashSeenTime = Math.max(Helpers.getPreference(context, SyncManager.PREF_TRASH_LAST_SEEN_TIME, (long) 0), syncJournalDb.getCheckpoint("trash"));
+		lastAlbumsSeenTime = Math.max(Helpers.getPreference(context, SyncManager.PREF_ALBUMS_LAST_SEEN_TIME, (long) 0), syncJournalDb.getCheckpoint("albums"));
+		lastAlbumFilesSeenTime = Math.max(Helpers.getPreference(context, SyncManager.PREF_ALBUM_FILES_LAST_SEEN_TIME, (long) 0), syncJournalDb.getCheckpoint("albumFiles"));
+		lastDelSeenTime = Math.max(Helpers.getPreference(context, SyncManager.PREF_LAST_DEL_SEEN_TIME, (long) 0), syncJournalDb.getCheckpoint("deletes"));
+		lastContactsSeenTime = Math.max(Helpers.getPreference(context, SyncManager.PREF_LAST_CONTACTS_SEEN_TIME, (long) 0), syncJournalDb.getCheckpoint("contacts"));
 
 		boolean needToUpdateUI = false;
 
 		try {
 			needToUpdateUI = getFileList(context);
-
-			Helpers.storePreference(context, SyncManager.PREF_LAST_SEEN_TIME, lastSeenTime);
-			Helpers.storePreference(context, SyncManager.PREF_TRASH_LAST_SEEN_TIME, lastTrashSeenTime);
-			Helpers.storePreference(context, SyncManager.PREF_ALBUMS_LAST_SEEN_TIME, lastAlbumsSeenTime);
-			Helpers.storePreference(context, SyncManager.PREF_ALBUM_FILES_LAST_SEEN_TIME, lastAlbumFilesSeenTime);
-			Helpers.storePreference(context, SyncManager.PREF_LAST_DEL_SEEN_TIME, lastDelSeenTime);
-			Helpers.storePreference(context, SyncManager.PREF_LAST_CONTACTS_SEEN_TIME, lastContactsSeenTime);
-		} catch (JSONException | RuntimeException e) {
+		} catch (IOException | NoSuchAlgorithmException | KeyManagementException | JSONException | RuntimeException e) {
 			e.printStackTrace();
 		}
 
@@ -95,11 +111,62 @@ public class SyncCloudToLocalDb {
 		trashDb.close();
 		albumsDb.close();
 		albumFilesDb.close();
+		syncJournalDb.close();
+		downloadQueueDb.close();
 
 		return needToUpdateUI;
 	}
 
-	private boolean getFileList(Context context) throws JSONException, RuntimeException {
+	/**
+	 * Requests updates page by page until the server has no more. Every page is parsed as it arrives and
+	 * its items are applied one by one, so the whole list is never held in memory.
+	 * Seen times are stored after each page and every committed section is checkpointed in the sync journal,
+	 * so a killed sync continues after the last committed section.
+	 * The next page starts one millisecond before the last date of each section in the page, the page size can cut between
+	 * items with the same date. Items which come twice are applied twice, which changes nothing.
+	 * The server pages only by date, so a full page of items with one date would be returned again and again.
+	 * In that case the rest is asked for without a page size.
+	 */
+	private boolean getFileList(Context context) throws IOException, NoSuchAlgorithmException, KeyManagementException, JSONException, RuntimeException {
+		boolean needToUpdateUI = false;
+		boolean isPaged = true;
+		HashMap<String, Long> seenTimesBefore = new HashMap<>();
+		while (true) {
+			for (String section : SECTIONS) {
+				seenTimesBefore.put(section, getSeenTime(section));
+			}
+			hasMorePages = false;
+			pageSections.clear();
+
+			if (getUpdatesPage(context, isPaged)) {
+				needToUpdateUI = true;
+			}
+			boolean isStuck = false;
+			if (hasMorePages) {
+				for (String section : pageSections) {
+					stepBackSeenTime(section);
+					if (getSeenTime(section) <= seenTimesBefore.get(section)) {
+						isStuck = true;
+					}
+				}
+			}
+			storeSeenTimes();
+
+			// Stop if the server did not send anything, otherwise the same page would be asked for again
+			if (!hasMorePages || pageSections.isEmpty() || (isStuck && !isPaged)) {
+				break;
+			}
+			if (isStuck) {
+				isPaged = false;
+			}
+		}
+		return needToUpdateUI;
+	}
+
+	/**
+	 * @param isPaged false to get all updates in one response
+	 */
+	private boolean getUpdatesPage(Context context, boolean isPaged) throws IOException, NoSuchAlgorithmException, KeyManagementException, JSONException, RuntimeException {
 		boolean needToUpdateUI = false;
 		HashMap<String, String> postParams = new HashMap<String, String>();
 
@@ -111,132 +178,324 @@ public class SyncCloudToLocalDb {
 		postParams.put("albumFilesST", String.valueOf(lastAlbumFilesSeenTime));
 		postParams.put("delST", String.valueOf(lastDelSeenTime));
 		postParams.put("cntST", String.valueOf(lastContactsSeenTime));
+		if (isPaged) {
+			postParams.put("pageSize", String.valueOf(PAGE_SIZE));
+		}
 
-		JSONObject resp = HttpsClient.postFunc(
+		InputStream in = HttpsClient.postForStream(
 				StinglePhotosApplication.getApiUrl() + context.getString(R.string.get_updates_path),
 				postParams
 		);
-		StingleResponse response = new StingleResponse(context, resp, false);
-		if(response.isLoggedOut()){
-			throw new RuntimeException("Logged out");
-		}
-		if (response.isStatusOk()) {
-
-			if (processFilesInSet(context, response.get("files"), SyncManager.GALLERY)) {
-				needToUpdateUI = true;
-			}
-			if (processFilesInSet(context, response.get("trash"), SyncManager.TRASH)) {
-				needToUpdateUI = true;
-			}
-			if (processAlbums(context, response.get("albums"))) {
-				needToUpdateUI = true;
-			}
-			if (processFilesInSet(context, response.get("albumFiles"), SyncManager.ALBUM)) {
-				needToUpdateUI = true;
-			}
-			if (processContacts(context, response.get("contacts"))) {
-				needToUpdateUI = true;
-			}
-			if (processDeleteEvents(context, response.get("deletes"))) {
-				needToUpdateUI = true;
-			}
-
-
-			String spaceUsedStr = response.get("spaceUsed");
-			String spaceQuotaStr = response.get("spaceQuota");
-
-
-			if (spaceUsedStr != null && spaceUsedStr.length() > 0) {
-				int spaceUsed = Integer.parseInt(spaceUsedStr);
-				int oldSpaceUsed = Helpers.getPreference(context, SyncManager.PREF_LAST_SPACE_USED, 0);
-				if (spaceUsed != oldSpaceUsed) {
-					Helpers.storePreference(context, SyncManager.PREF_LAST_SPACE_USED, spaceUsed);
-					needToUpdateUI = true;
+		try (JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"))) {
+			String status = null;
+			String partsBeforeStatus = null;
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String name = reader.nextName();
+				if (name.equals("status") && reader.peek() == JsonToken.STRING) {
+					status = reader.nextString();
+				} else if (name.equals("parts") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+					if (status == null) {
+						// Can't be applied before the status is known, kept until the end of the response
+						partsBeforeStatus = readObject(reader).toString();
+					} else if (processParts(context, reader, "ok".equals(status))) {
+						needToUpdateUI = true;
+					}
+				} else {
+					reader.skipValue();
 				}
 			}
+			reader.endObject();
 
-			if (spaceQuotaStr != null && spaceQuotaStr.length() > 0) {
-				int spaceQuota = Integer.parseInt(spaceQuotaStr);
-				int oldSpaceQuota = Helpers.getPreference(context, SyncManager.PREF_LAST_SPACE_QUOTA, 0);
-				if (spaceQuota != oldSpaceQuota) {
-					Helpers.storePreference(context, SyncManager.PREF_LAST_SPACE_QUOTA, spaceQuota);
-					needToUpdateUI = true;
+			if (partsBeforeStatus != null) {
+				try (JsonReader partsReader = new JsonReader(new StringReader(partsBeforeStatus))) {
+					if (processParts(context, partsReader, "ok".equals(status))) {
+						needToUpdateUI = true;
+					}
 				}
 			}
-
 		}
 
 		return needToUpdateUI;
 	}
 
-	private boolean processFilesInSet(Context context, String filesStr, int set) throws JSONException {
-		boolean result = false;
-		if (filesStr != null && filesStr.length() > 0) {
-			JSONArray files = new JSONArray(filesStr);
-			for (int i = 0; i < files.length(); i++) {
-				JSONObject file = files.optJSONObject(i);
-				if (file != null) {
-					StingleDbFile dbFile = new StingleDbFile(file);
-					Log.d("receivedFile", set + " - " + dbFile.filename);
-					processFile(context, dbFile, set);
-					result = true;
+	/**
+	 * Applies the sections of the response in the order the server sends them
+	 */
+	private boolean processParts(Context context, JsonReader reader, boolean isStatusOk) throws IOException, JSONException {
+		boolean needToUpdateUI = false;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if (name.equals("logout")) {
+				String logout = readString(reader);
+				if (logout != null && logout.length() > 0) {
+					LoginManager.logoutLocally(context);
+					throw new RuntimeException("Logged out");
+				}
+				continue;
+			}
+			if (!isStatusOk) {
+				reader.skipValue();
+				continue;
+			}
+
+			boolean updated = false;
+			switch (name) {
+				case "files":
+					updated = readFileItems(context, reader, SyncManager.GALLERY);
+					break;
+				case "trash":
+					updated = readFileItems(context, reader, SyncManager.TRASH);
+					break;
+				case "albums":
+					updated = readItems(reader, item -> {
+						StingleDbAlbum dbAlbum = new StingleDbAlbum(item);
+						Log.d("receivedAlbum", dbAlbum.albumId);
+						processAlbum(dbAlbum);
+					});
+					break;
+				case "albumFiles":
+					updated = readFileItems(context, reader, SyncManager.ALBUM);
+					break;
+				case "contacts":
+					updated = readItems(reader, item -> {
+						StingleContact dbContact = new StingleContact(item);
+						Log.d("receivedContact", dbContact.email);
+						processContact(dbContact);
+					});
+					break;
+				case "deletes":
+					updated = readItems(reader, item -> {
+						Log.d("receivedDelete", item.optString("file") + " - " + item.optString("albumId"));
+						processDeleteEvent(context, item);
+					});
+					break;
+				case "spaceUsed":
+					updated = processSpace(readString(reader), SyncManager.PREF_LAST_SPACE_USED);
+					break;
+				case "spaceQuota":
+					updated = processSpace(readString(reader), SyncManager.PREF_LAST_SPACE_QUOTA);
+					break;
+				case "hasMore":
+					hasMorePages = "1".equals(readString(reader));
+					break;
+				default:
+					reader.skipValue();
+			}
+			if (updated) {
+				needToUpdateUI = true;
+				long seenTime = getSeenTime(name);
+				if (seenTime > 0) {
+					pageSections.add(name);
+					// The section may continue on the next page with items of the same date
+					syncJournalDb.setCheckpoint(name, seenTime - 1);
 				}
 			}
 		}
-		return result;
+		reader.endObject();
+		return needToUpdateUI;
+	}
+
+	private interface ItemProcessor {
+		void process(JSONObject item) throws JSONException;
 	}
 
-	private boolean processAlbums(Context context, String albumsStr) throws JSONException {
+	/**
+	 * Reads a list of items and hands them to the processor one at a time
+	 *
+	 * @return true if there was at least one item
+	 */
+	private boolean readItems(JsonReader reader, ItemProcessor processor) throws IOException, JSONException {
 		boolean result = false;
-		if (albumsStr != null && albumsStr.length() > 0) {
-			JSONArray albums = new JSONArray(albumsStr);
-			for (int i = 0; i < albums.length(); i++) {
-				JSONObject album = albums.optJSONObject(i);
-				if (album != null) {
-					StingleDbAlbum dbAlbum = new StingleDbAlbum(album);
-					Log.d("receivedAlbum", dbAlbum.albumId);
-					processAlbum(dbAlbum);
-					result = true;
+		if (reader.peek() == JsonToken.STRING) {
+			// An empty list can come as an empty string
+			String itemsStr = reader.nextString();
+			if (itemsStr.length() > 0) {
+				JSONArray items = new JSONArray(itemsStr);
+				for (int i = 0; i < items.length(); i++) {
+					JSONObject item = items.optJSONObject(i);
+					if (item != null) {
+						processor.process(item);
+						result = true;
+					}
 				}
 			}
+			return result;
 		}
+		if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+			reader.skipValue();
+			return false;
+		}
+
+		reader.beginArray();
+		while (reader.hasNext()) {
+			if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+				processor.process(readObject(reader));
+				result = true;
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endArray();
 		return result;
 	}
 
-	private boolean processContacts(Context context, String contactsStr) throws JSONException {
-		boolean result = false;
-		if (contactsStr != null && contactsStr.length() > 0) {
-			JSONArray contacts = new JSONArray(contactsStr);
-			for (int i = 0; i < contacts.length(); i++) {
-				JSONObject contact = contacts.optJSONObject(i);
-				if (contact != null) {
-					StingleContact dbContact = new StingleContact(contact);
-					Log.d("receivedContact", dbContact.email);
-					processContact(dbContact);
-					result = true;
-				}
+	/**
+	 * Reads a list of files and applies them in batches
+	 */
+	private boolean readFileItems(Context context, JsonReader reader, int set) throws IOException, JSONException {
+		FileBatch batch = new FileBatch(context, set);
+		boolean result = readItems(reader, item -> {
+			StingleDbFile dbFile = new StingleDbFile(item);
+			Log.d("receivedFile", set + " - " + dbFile.filename);
+			batch.add(dbFile);
+		});
+		batch.apply();
+		return result;
+	}
+
+	/**
+	 * Files of one section which are applied every BATCH_SIZE files.
+	 * The server does not promise to sort the files by date, so a later batch can still have older files and
+	 * the section is checkpointed only when it ends.
+	 */
+	private class FileBatch {
+		private final Context context;
+		private final int set;
+		private final ArrayList<StingleDbFile> files = new ArrayList<>();
+
+		FileBatch(Context context, int set) {
+			this.context = context;
+			this.set = set;
+		}
+
+		void add(StingleDbFile file) {
+			files.add(file);
+
+			if (files.size() >= BATCH_SIZE) {
+				apply();
+			}
+		}
+
+		void apply() {
+			if (files.size() > 0) {
+				processFiles(context, files, set);
+				files.clear();
 			}
 		}
-		return result;
 	}
 
-	private boolean processDeleteEvents(Context context, String delsStr) throws JSONException {
-		boolean result = false;
-		if (delsStr != null && delsStr.length() > 0) {
-			JSONArray deletes = new JSONArray(delsStr);
-			for (int i = 0; i < deletes.length(); i++) {
-				JSONObject deleteEvent = deletes.optJSONObject(i);
-				if (deleteEvent != null) {
-					Log.d("receivedDelete", deleteEvent.optString("file") + " - " + deleteEvent.optString("albumId"));
-					processDeleteEvent(context, deleteEvent);
-					result = true;
+	private static JSONObject readObject(JsonReader reader) throws IOException, JSONException {
+		JSONObject object = new JSONObject();
+		reader.beginObject();
+		while (reader.hasNext()) {
+			object.put(reader.nextName(), readValue(reader));
+		}
+		reader.endObject();
+		return object;
+	}
+
+	private static Object readValue(JsonReader reader) throws IOException, JSONException {
+		switch (reader.peek()) {
+			case BEGIN_OBJECT:
+				return readObject(reader);
+			case BEGIN_ARRAY:
+				JSONArray array = new JSONArray();
+				reader.beginArray();
+				while (reader.hasNext()) {
+					array.put(readValue(reader));
 				}
+				reader.endArray();
+				return array;
+			case BOOLEAN:
+				return reader.nextBoolean();
+			case NULL:
+				reader.nextNull();
+				return JSONObject.NULL;
+			default:
+				// Numbers are kept as text, JSONObject converts them when they are read
+				return reader.nextString();
+		}
+	}
+
+	private static String readString(JsonReader reader) throws IOException {
+		JsonToken token = reader.peek();
+		if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+			return reader.nextString();
+		}
+		reader.skipValue();
+		return null;
+	}
+
+	private boolean processSpace(String valueStr, String pref) {
+		if (valueStr != null && valueStr.length() > 0) {
+			int value = Integer.parseInt(valueStr);
+			int oldValue = Helpers.getPreference(context, pref, 0);
+			if (value != oldValue) {
+				Helpers.storePreference(context, pref, value);
+				return true;
 			}
 		}
-		return result;
+		return false;
+	}
+
+	private long getSeenTime(String section) {
+		switch (section) {
+			case "files":
+				return lastSeenTime;
+			case "trash":
+				return lastTrashSeenTime;
+			case "albums":
+				return lastAlbumsSeenTime;
+			case "albumFiles":
+				return lastAlbumFilesSeenTime;
+			case "deletes":
+				return lastDelSeenTime;
+			case "contacts":
+				return lastContactsSeenTime;
+			default:
+				return -1;
+		}
+	}
+
+	private void stepBackSeenTime(String section) {
+		switch (section) {
+			case "files":
+				lastSeenTime--;
+				break;
+			case "trash":
+				lastTrashSeenTime--;
+				break;
+			case "albums":
+				lastAlbumsSeenTime--;
+				break;
+			case "albumFiles":
+				lastAlbumFilesSeenTime--;
+				break;
+			case "deletes":
+				lastDelSeenTime--;
+				break;
+			case "contacts":
+				lastContactsSeenTime--;
+				break;
+		}
+	}
+
+	private void storeSeenTimes() {
+		Helpers.storePreference(context, SyncManager.PREF_LAST_SEEN_TIME, lastSeenTime);
+		Helpers.storePreference(context, SyncManager.PREF_TRASH_LAST_SEEN_TIME, lastTrashSeenTime);
+		Helpers.storePreference(context, SyncManager.PREF_ALBUMS_LAST_SEEN_TIME, lastAlbumsSeenTime);
+		Helpers.storePreference(context, SyncManager.PREF_ALBUM_FILES_LAST_SEEN_TIME, lastAlbumFilesSeenTime);
+		Helpers.storePreference(context, SyncManager.PREF_LAST_DEL_SEEN_TIME, lastDelSeenTime);
+		Helpers.storePreference(context, SyncManager.PREF_LAST_CONTACTS_SEEN_TIME, lastContactsSeenTime);
 	}
 
-	private boolean processFile(Context context, StingleDbFile remoteFile, int set) {
+	/**
+	 * Applies remote files of one set in a single transaction. Existing rows are looked up with one query.
+	 * Seen times move forward and changed files are queued for DownloadQueue only after the transaction is committed.
+	 */
+	private void processFiles(Context context, List<StingleDbFile> remoteFiles, int set) {
 
 		FilesDb myDb;
 		if (set == SyncManager.GALLERY) {
@@ -246,12 +505,64 @@ public class SyncCloudToLocalDb {
 		} else if (set == SyncManager.ALBUM) {
 			myDb = albumFilesDb;
 		} else {
-			return false;
+			return;
 		}
 
-		StingleDbFile file = myDb.getFileIfExists(remoteFile.filename, remoteFile.albumId);
+		HashSet<String> filenames = new HashSet<>();
+		for (StingleDbFile remoteFile : remoteFiles) {
+			filenames.add(remoteFile.filename);
+		}
+		HashMap<String, StingleDbFile> existingFiles = new HashMap<>();
+		for (StingleDbFile file : myDb.getFilesIfExist(filenames)) {
+			existingFiles.put(getFileKey(file, set), file);
+		}
 
 		File dir = new File(FileManager.getHomeDir(context));
+		ArrayList<StingleDbFile> filesToDownload = new ArrayList<>();
+
+		myDb.beginTransaction();
+		try {
+			for (StingleDbFile remoteFile : remoteFiles) {
+				StingleDbFile file = existingFiles.get(getFileKey(remoteFile, set));
+				if (processFile(myDb, file, remoteFile, dir)) {
+					filesToDownload.add(file);
+				}
+				if (file == null) {
+					// The same file can come twice in one batch
+					existingFiles.put(getFileKey(remoteFile, set), remoteFile);
+				}
+			}
+			myDb.setTransactionSuccessful();
+		} finally {
+			myDb.endTransaction();
+		}
+
+		for (StingleDbFile remoteFile : remoteFiles) {
+			moveForwardFileSeenTime(remoteFile, set);
+		}
+
+		for (StingleDbFile file : filesToDownload) {
+			FileManager.deletePartFiles(context, file.filename);
+			downloadQueueDb.enqueue(file.filename, set, true);
+			if (file.isLocal) {
+				downloadQueueDb.enqueue(file.filename, set, false);
+			}
+		}
+	}
+
+	private static String getFileKey(StingleDbFile file, int set) {
+		if (set == SyncManager.ALBUM) {
+			return file.albumId + "/" + file.filename;
+		}
+		return file.filename;
+	}
+
+	/**
+	 * Inserts or updates the local row of a remote file
+	 *
+	 * @return true if the file has a newer version and has to be downloaded again
+	 */
+	private boolean processFile(FilesDb myDb, StingleDbFile file, StingleDbFile remoteFile, File dir) {
 		File fsFile = new File(dir.getPath() + "/" + remoteFile.filename);
 
 		remoteFile.isLocal = false;
@@ -262,6 +573,7 @@ public class SyncCloudToLocalDb {
 		if (file == null) {
 			remoteFile.isRemote = true;
 			myDb.insertFile(remoteFile);
+			return false;
 		} else {
 			boolean needUpdate = false;
 			boolean needDownload = false;
@@ -285,20 +597,8 @@ public class SyncCloudToLocalDb {
 			if (needUpdate) {
 				myDb.updateFile(file);
 			}
-			if (needDownload) {
-				String homeDir = FileManager.getHomeDir(context);
-				String thumbDir = FileManager.getThumbsDir(context);
-				String mainFilePath = homeDir + "/" + file.filename;
-				String thumbPath = thumbDir + "/" + file.filename;
-
-				SyncManager.downloadFile(context, file.filename, mainFilePath, false, set);
-				SyncManager.downloadFile(context, file.filename, thumbPath, true, set);
-			}
+			return needDownload;
 		}
-
-		moveForwardFileSeenTime(remoteFile, set);
-
-		return true;
 	}
 
 	private void moveForwardFileSeenTime(StingleDbFile remoteFile, int set) {
@@ -328,6 +628,7 @@ public class SyncCloudToLocalDb {
 		} else {
 			if (album.dateModified != remoteAlbum.dateModified) {
 				albumsDb.updateAlbum(remoteAlbum);
+				StinglePhotosApplication.getAlbumKeyring().invalidate(remoteAlbum.albumId);
 			}
 		}
 
@@ -398,6 +699,7 @@ public class SyncCloudToLocalDb {
 				albumFilesDb.deleteAlbumFilesIfNotNeeded(context, albumId);
 				albumFilesDb.deleteAllFilesInAlbum(albumId);
 				albumsDb.deleteAlbum(albumId);
+				StinglePhotosApplication.getAlbumKeyring().invalidate(albumId);
 			}
 		} else if (type == SyncManager.DELETE_EVENT_ALBUM_FILE) {
 			StingleDbFile file = albumFilesDb.getFileIfExists(filename);
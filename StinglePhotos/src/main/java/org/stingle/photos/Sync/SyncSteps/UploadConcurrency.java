@@ -0,0 +1,95 @@
+package org.stingle.photos.Sync.SyncSteps;
+
+/**
+ * Decides how many files are uploaded at the same time.
+ *
+ * Throughput of all uploads together is measured over short windows. One more upload is allowed while the throughput keeps growing,
+ * one less if the last added upload made it slower, and the count is halved when an upload fails.
+ */
+public class UploadConcurrency {
+
+	public static final int MIN_WORKERS = 1;
+	public static final int MAX_WORKERS = 4;
+
+	private static final int INITIAL_WORKERS = 2;
+	private static final long WINDOW_MILLIS = 5000;
+	private static final double MIN_GAIN = 1.1;
+
+	private int limit = INITIAL_WORKERS;
+	private int active = 0;
+	private long windowStart = System.currentTimeMillis();
+	private long windowBytes = 0;
+	private int windowFailures = 0;
+	private double lastRate = -1;
+	private boolean isIncreased = false;
+
+	/**
+	 * Waits until less uploads than the current limit are running and counts one more as running
+	 */
+	public synchronized void acquire() throws InterruptedException {
+		while (active >= limit) {
+			wait();
+		}
+		if(active == 0 && windowBytes == 0){
+			// Time without any upload does not count
+			windowStart = System.currentTimeMillis();
+		}
+		active++;
+	}
+
+	/**
+	 * @param uploadedBytes bytes sent by the finished upload, negative if it failed
+	 */
+	public synchronized void release(long uploadedBytes) {
+		active--;
+		if(uploadedBytes < 0){
+			windowFailures++;
+		}
+		else {
+			windowBytes += uploadedBytes;
+		}
+
+		long elapsed = System.currentTimeMillis() - windowStart;
+		if(windowFailures > 0 || elapsed >= WINDOW_MILLIS){
+			adjust(elapsed);
+		}
+		notifyAll();
+	}
+
+	public synchronized void awaitIdle() throws InterruptedException {
+		while (active > 0) {
+			wait();
+		}
+	}
+
+	public synchronized int getLimit(){
+		return limit;
+	}
+
+	private void adjust(long elapsed){
+		double rate = windowBytes * 1000.0 / Math.max(1, elapsed);
+
+		if(windowFailures > 0){
+			limit = Math.max(MIN_WORKERS, limit / 2);
+			isIncreased = false;
+		}
+		else if(lastRate < 0 || rate >= lastRate * MIN_GAIN){
+			isIncreased = limit < MAX_WORKERS;
+			limit = Math.min(MAX_WORKERS, limit + 1);
+		}
+		else if(isIncreased && rate < lastRate){
+			limit = Math.max(MIN_WORKERS, limit - 1);
+			isIncreased = false;
+		}
+		else {
+			isIncreased = false;
+		}
+
+		if(windowBytes > 0) {
+			lastRate = rate;
+		}
+		windowStart = System.currentTimeMillis();
+		windowBytes = 0;
+		windowFailures = 0;
+	}
+}
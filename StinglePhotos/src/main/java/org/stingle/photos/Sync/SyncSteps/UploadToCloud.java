@@ -8,7 +8,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.SharedPreferences;
-import android.database.Cursor;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.os.AsyncTask;
@@ -21,11 +20,16 @@ import android.util.Log;
 import org.json.JSONObject;
 import org.stingle.photos.Auth.KeyManagement;
 import org.stingle.photos.Auth.LoginManager;
+import org.stingle.photos.Crypto.Crypto;
+import org.stingle.photos.Crypto.CryptoException;
+import org.stingle.photos.Crypto.CryptoHelpers;
+import org.stingle.photos.Crypto.DecryptingFileChannel;
+import org.stingle.photos.Db.Objects.StingleDbFile;
 import org.stingle.photos.Db.Query.AlbumFilesDb;
 import org.stingle.photos.Db.Query.FilesDb;
 import org.stingle.photos.Db.Query.GalleryTrashDb;
-import org.stingle.photos.Db.StingleDb;
-import org.stingle.photos.Db.StingleDbContract;
+import org.stingle.photos.Db.Query.UploadQueueDb;
+import org.stingle.photos.Db.Query.UploadSessionsDb;
 import org.stingle.photos.Files.FileManager;
 import org.stingle.photos.Gallery.Gallery.GalleryActions;
 import org.stingle.photos.GalleryActivity;
@@ -37,19 +41,41 @@ import org.stingle.photos.Sync.SyncManager;
 import org.stingle.photos.Util.Helpers;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static android.content.Context.BATTERY_SERVICE;
 
 public class UploadToCloud {
 
+	private static final long PART_UPLOAD_MIN_SIZE = 1024 * 1024 * 8;
+	private static final int PART_SIZE = 1024 * 1024 * 4;
+	private static final int PART_ATTEMPTS = 3;
+	private static final long PART_RETRY_DELAY = 2000;
+
+	private static final int QUEUE_PAGE_SIZE = 20;
+	private static final long METERED_LARGE_FILE_SIZE = 1024 * 1024 * 10;
+	private static final long RETRY_DELAY = 60 * 1000;
+	private static final long RETRY_MAX_DELAY = 6 * 60 * 60 * 1000;
+
 	private Context context;
 	private File dir;
 	private File thumbDir;
 	private AsyncTask<?,?,?> task;
-	private int uploadedFilesCount = 0;
+	private AtomicInteger uploadedFilesCount = new AtomicInteger(0);
 	private int totalFilesCount = 0;
+	private UploadSessionsDb uploadSessionsDb;
+	private UploadQueueDb uploadQueueDb;
+	private HashMap<Integer, FilesDb> filesDbs = new HashMap<>();
+	private ExecutorService executor;
+	private UploadConcurrency concurrency;
+	private long reservedBytes = 0;
+	private volatile boolean isQuotaReached = false;
 
 	public static NotificationManager mNotifyManager;
 	public static Notification.Builder notificationBuilder;
@@ -68,18 +94,62 @@ public class UploadToCloud {
 			return;
 		}
 		showNotification();
-		totalFilesCount = getFilesCountToUpload(SyncManager.GALLERY) + getFilesCountToUpload(SyncManager.TRASH) + getFilesCountToUpload(SyncManager.ALBUM);
+
+		uploadQueueDb = new UploadQueueDb(context);
+		// Uploads which were running when the app was killed and large files left for later by the last run
+		uploadQueueDb.resetStatus(UploadQueueDb.STATUS_UPLOADING);
+		uploadQueueDb.resetStatus(UploadQueueDb.STATUS_DEFERRED);
+		totalFilesCount = (int) uploadQueueDb.getEligibleCount(System.currentTimeMillis());
 
 		SyncManager.setSyncStatus(context, SyncManager.STATUS_UPLOADING);
 
-		uploadSet(SyncManager.GALLERY);
-		uploadSet(SyncManager.TRASH);
-		uploadSet(SyncManager.ALBUM);
+		uploadSessionsDb = new UploadSessionsDb(context);
+		filesDbs.put(SyncManager.GALLERY, new GalleryTrashDb(context, SyncManager.GALLERY));
+		filesDbs.put(SyncManager.TRASH, new GalleryTrashDb(context, SyncManager.TRASH));
+		filesDbs.put(SyncManager.ALBUM, new AlbumFilesDb(context));
+		concurrency = new UploadConcurrency();
+		executor = Executors.newFixedThreadPool(UploadConcurrency.MAX_WORKERS);
+
+		boolean isMetered = isNetworkMetered();
+		if(uploadQueue(isMetered) && isMetered){
+			uploadQueueDb.resetStatus(UploadQueueDb.STATUS_DEFERRED);
+			uploadQueue(false);
+		}
+
+		// The workers use the dbs
+		try {
+			concurrency.awaitIdle();
+		}
+		catch (InterruptedException e) {
+			executor.shutdownNow();
+			// Running uploads finish their current request, the dbs can't be closed under them
+			awaitWorkersTermination();
+			Thread.currentThread().interrupt();
+		}
+		executor.shutdown();
+		for(FilesDb db : filesDbs.values()){
+			db.close();
+		}
+		filesDbs.clear();
+		uploadSessionsDb.close();
+		uploadQueueDb.close();
 		SyncManager.setSyncStatus(context, SyncManager.STATUS_IDLE);
 		isNotificationActive = false;
 		removeNotification();
 	}
 
+	private void awaitWorkersTermination(){
+		while (true) {
+			try {
+				if(executor.awaitTermination(1, TimeUnit.SECONDS)){
+					return;
+				}
+			}
+			catch (InterruptedException ignored) {
+			}
+		}
+	}
+
 	private boolean isUploadAllowed(){
 		if(!LoginManager.isLoggedIn(context)) {
 			return false;
@@ -160,121 +230,225 @@ public class UploadToCloud {
 		return 0;
 	}
 
-	protected int getFilesCountToUpload(int set){
-		FilesDb db;
-		if(set == SyncManager.GALLERY || set == SyncManager.TRASH){
-			db = new GalleryTrashDb(context, set);
-		}
-		else if (set == SyncManager.ALBUM){
-			db = new AlbumFilesDb(context);
-		}
-		else{
-			return 0;
-		}
+	private boolean isNetworkMetered(){
+		ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+		return cm != null && cm.isActiveNetworkMetered();
+	}
 
-		Cursor result = db.getFilesList(GalleryTrashDb.GET_MODE_ONLY_LOCAL, StingleDb.SORT_ASC, "", null);
-		int uploadCount = result.getCount();
-		result.close();
+	/**
+	 * Uploads the queued files in the order of the queue. Files which failed are skipped until their retry time.
+	 * The pass stops when a file does not fit in the quota, otherwise the same files would be picked up again and again.
+	 *
+	 * @param deferLargeFiles leave large files, which are mostly videos, for the end
+	 * @return false if the upload was stopped
+	 */
+	private boolean uploadQueue(boolean deferLargeFiles){
+		while(true) {
+			if((task != null && task.isCancelled()) || isQuotaReached){
+				return false;
+			}
+			// Checked once per page, it reads the network and battery state
+			if(!isUploadAllowed()){
+				return false;
+			}
 
-		Cursor reuploadResult = db.getReuploadFilesList();
-		int reuploadCount = reuploadResult.getCount();
-		reuploadResult.close();
+			ArrayList<UploadQueueDb.Item> queueItems = uploadQueueDb.getItems(System.currentTimeMillis(), QUEUE_PAGE_SIZE);
+			if(queueItems.isEmpty()){
+				return true;
+			}
 
-		db.close();
+			for(UploadQueueDb.Item queueItem : queueItems) {
+				if(isQuotaReached){
+					return false;
+				}
+				FilesDb db = filesDbs.get(queueItem.set);
+				StingleDbFile file = (db != null ? db.getFileIfExists(queueItem.filename, queueItem.albumId) : null);
+				if(file == null){
+					uploadQueueDb.deleteItem(queueItem.id);
+					continue;
+				}
+				if(deferLargeFiles && new File(dir.getPath() + "/" + queueItem.filename).length() >= METERED_LARGE_FILE_SIZE){
+					uploadQueueDb.setStatus(queueItem.id, UploadQueueDb.STATUS_DEFERRED);
+					continue;
+				}
+
+				// Running uploads are not picked up again by the next page
+				uploadQueueDb.setStatus(queueItem.id, UploadQueueDb.STATUS_UPLOADING);
+				if(!submitFile(queueItem, db, new UploadItem(file))){
+					uploadQueueDb.setStatus(queueItem.id, UploadQueueDb.STATUS_QUEUED);
+					return false;
+				}
+			}
+		}
+	}
 
-		return uploadCount + reuploadCount;
+	private static class UploadItem {
+		public String filename;
+		public String version;
+		public String dateCreated;
+		public String dateModified;
+		public String headers;
+		public String albumId = "";
+		public boolean isReupload;
+
+		public UploadItem(StingleDbFile file){
+			filename = file.filename;
+			version = String.valueOf(file.version);
+			dateCreated = String.valueOf(file.dateCreated);
+			dateModified = String.valueOf(file.dateModified);
+			headers = file.headers;
+			if(file.albumId != null){
+				albumId = file.albumId;
+			}
+			isReupload = (file.reupload == FilesDb.REUPLOAD_YES);
+		}
 	}
 
-	protected void uploadSet(int set){
-		FilesDb db;
-		if(set == SyncManager.GALLERY || set == SyncManager.TRASH){
-			db = new GalleryTrashDb(context, set);
+	/**
+	 * Waits until one more upload is allowed to run and starts it on a worker
+	 *
+	 * @return false if the wait was interrupted
+	 */
+	private boolean submitFile(UploadQueueDb.Item queueItem, FilesDb db, UploadItem item){
+		if(executor.isShutdown()){
+			return false;
 		}
-		else if (set == SyncManager.ALBUM){
-			db = new AlbumFilesDb(context);
+		try {
+			concurrency.acquire();
 		}
-		else{
-			return;
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
 		}
 
-		Cursor result = db.getFilesList(GalleryTrashDb.GET_MODE_ONLY_LOCAL, StingleDb.SORT_DESC, null, null);
-		while(result.moveToNext()) {
-			if(task != null && task.isCancelled()){
-				break;
+		uploadedFilesCount.incrementAndGet();
+		executor.execute(() -> {
+			long uploadedBytes = -1;
+			try {
+				uploadedBytes = uploadFile(queueItem.set, db, item);
 			}
-			if(!isUploadAllowed()){
-				break;
+			finally {
+				concurrency.release(uploadedBytes);
+				finishQueueItem(queueItem, uploadedBytes);
 			}
-			uploadedFilesCount++;
-			uploadFile(set, db, result, false);
-		}
-		result.close();
+		});
+		return true;
+	}
 
-		Cursor reuploadResult = db.getReuploadFilesList();
-		while(reuploadResult.moveToNext()) {
-			if(task != null && task.isCancelled()){
-				break;
-			}
-			if(!isUploadAllowed()){
-				break;
-			}
-			uploadedFilesCount++;
-			uploadFile(set, db, reuploadResult, true);
+	/**
+	 * A failed file is tried again after a delay which doubles with every failure. An uploaded file is taken out of the queue
+	 * by the trigger when it is marked as remote.
+	 */
+	private void finishQueueItem(UploadQueueDb.Item queueItem, long uploadedBytes){
+		if(uploadedBytes < 0){
+			int attempts = queueItem.attempts + 1;
+			long delay = RETRY_DELAY << Math.min(attempts - 1, 16);
+			uploadQueueDb.markFailed(queueItem.id, attempts, System.currentTimeMillis() + Math.min(delay, RETRY_MAX_DELAY));
+		}
+		else if(uploadedBytes == 0){
+			// Not uploaded because of the quota, waits for more space
+			uploadQueueDb.setStatus(queueItem.id, UploadQueueDb.STATUS_QUEUED);
 		}
-		reuploadResult.close();
-
-		db.close();
 	}
 
-	protected void uploadFile(int set, FilesDb db, Cursor result, boolean isReupload){
-		String filename = result.getString(result.getColumnIndexOrThrow(StingleDbContract.Columns.COLUMN_NAME_FILENAME));
-		String version = result.getString(result.getColumnIndexOrThrow(StingleDbContract.Columns.COLUMN_NAME_VERSION));
-		String dateCreated = result.getString(result.getColumnIndexOrThrow(StingleDbContract.Columns.COLUMN_NAME_DATE_CREATED));
-		String dateModified = result.getString(result.getColumnIndexOrThrow(StingleDbContract.Columns.COLUMN_NAME_DATE_MODIFIED));
-		String headers = result.getString(result.getColumnIndexOrThrow(StingleDbContract.Columns.COLUMN_NAME_HEADERS));
-		String albumId = "";
-		try {
-			albumId = result.getString(result.getColumnIndexOrThrow(StingleDbContract.Columns.COLUMN_NAME_ALBUM_ID));
+	/**
+	 * Reserves space for an upload, so uploads running at the same time do not go over the quota together.
+	 * Space used on the server is only known from the responses of finished uploads.
+	 */
+	private synchronized boolean reserveUploadSpace(long bytes){
+		if(!Helpers.isUploadSpaceAvailable(context, Helpers.bytesToMb(reservedBytes + bytes))){
+			return false;
 		}
-		catch (IllegalArgumentException ignored) {}
+		reservedBytes += bytes;
+		return true;
+	}
+
+	private synchronized void releaseUploadSpace(long bytes){
+		reservedBytes -= bytes;
+	}
 
-		notifyGalleryAboutProgress(filename, headers, set, albumId);
+	/**
+	 * @return number of uploaded bytes, 0 if the file was not uploaded because of the quota, -1 if the upload failed
+	 */
+	protected long uploadFile(int set, FilesDb db, UploadItem item){
+		notifyGalleryAboutProgress(item.filename, item.headers, set, item.albumId);
 
-		Log.d("uploadingFile", filename);
-		File file = new File(dir.getPath() + "/" + filename);
-		File thumb = new File(thumbDir.getPath() + "/" + filename);
+		Log.d("uploadingFile", item.filename);
+		File file = new File(dir.getPath() + "/" + item.filename);
+		File thumb = new File(thumbDir.getPath() + "/" + item.filename);
 
-		int overallSize = Helpers.bytesToMb(file.length() + thumb.length());
-		if(!Helpers.isUploadSpaceAvailable(context, overallSize)){
+		long uploadSize = file.length() + thumb.length();
+		if(!reserveUploadSpace(uploadSize)){
+			isQuotaReached = true;
 			Helpers.storePreference(context, SyncManager.PREF_LAST_AVAILABLE_SPACE, Helpers.getAvailableUploadSpace(context));
 			Helpers.storePreference(context, SyncManager.PREF_SUSPEND_UPLOAD, true);
 			Log.d("not_uploading", "space is over, not uploading file " + file.getName());
-			return;
+			return 0;
 		}
 
-		HttpsClient.FileToUpload fileToUpload = new HttpsClient.FileToUpload("file", file.getPath(), SyncManager.SP_FILE_MIME_TYPE);
-		HttpsClient.FileToUpload thumbToUpload = new HttpsClient.FileToUpload("thumb", thumb.getPath(), SyncManager.SP_FILE_MIME_TYPE);
+		try {
+			if(!sendFile(set, db, item, file, thumb)){
+				return -1;
+			}
+			return uploadSize;
+		}
+		finally {
+			releaseUploadSpace(uploadSize);
+		}
+	}
 
-		ArrayList<HttpsClient.FileToUpload> filesToUpload = new ArrayList<>();
-		filesToUpload.add(fileToUpload);
-		filesToUpload.add(thumbToUpload);
+	private boolean sendFile(int set, FilesDb db, UploadItem item, File file, File thumb){
+		String filename = item.filename;
+		String albumId = item.albumId;
+		String headers = item.headers;
 
 		HashMap<String, String> postParams = new HashMap<>();
 
 		postParams.put("token", KeyManagement.getApiToken(context));
 		postParams.put("set", String.valueOf(set));
 		postParams.put("albumId", albumId);
-		postParams.put("version", version);
-		postParams.put("dateCreated", dateCreated);
-		postParams.put("dateModified", dateModified);
+		postParams.put("version", item.version);
+		postParams.put("dateCreated", item.dateCreated);
+		postParams.put("dateModified", item.dateModified);
 		postParams.put("headers", headers);
 
-		JSONObject resp = HttpsClient.multipartUpload(
-				StinglePhotosApplication.getApiUrl() + context.getString(R.string.upload_file_path),
-				postParams,
-				filesToUpload
-		);
-		StingleResponse response = new StingleResponse(this.context, resp, false);
+		UploadSessionsDb.Session session = null;
+		Crypto.Header header = null;
+		if(file.length() >= PART_UPLOAD_MIN_SIZE){
+			header = getFileHeader(set, albumId, headers);
+			if(header != null){
+				session = startPartUpload(postParams, filename, file);
+				if(session == null && uploadSessionsDb.getSession(filename) != null){
+					Log.d("upload", "could not continue upload of " + filename + ", retrying on next sync");
+					return false;
+				}
+			}
+		}
+
+		StingleResponse response;
+		if(session != null){
+			response = uploadParts(session, header, file, thumb);
+			if(response == null){
+				Log.d("upload", "upload of " + filename + " stopped at " + session.offset + " of " + session.fileSize);
+				return false;
+			}
+		}
+		else {
+			HttpsClient.FileToUpload fileToUpload = new HttpsClient.FileToUpload("file", file.getPath(), SyncManager.SP_FILE_MIME_TYPE);
+			HttpsClient.FileToUpload thumbToUpload = new HttpsClient.FileToUpload("thumb", thumb.getPath(), SyncManager.SP_FILE_MIME_TYPE);
+
+			ArrayList<HttpsClient.FileToUpload> filesToUpload = new ArrayList<>();
+			filesToUpload.add(fileToUpload);
+			filesToUpload.add(thumbToUpload);
+
+			JSONObject resp = HttpsClient.multipartUpload(
+					StinglePhotosApplication.getApiUrl() + context.getString(R.string.upload_file_path),
+					postParams,
+					filesToUpload
+			);
+			response = new StingleResponse(this.context, resp, false);
+		}
+
 		if(response.isStatusOk()){
 			db.markFileAsRemote(filename);
 
@@ -298,22 +472,160 @@ public class UploadToCloud {
 			GalleryActions.refreshGalleryItem(context, filename, set, albumId);
 		}
 
-		if(isReupload){
+		if(item.isReupload){
 			db.markFileAsReuploaded(filename);
 		}
+		return response.isStatusOk();
+	}
+
+	private Crypto.Header getFileHeader(int set, String albumId, String headers){
+		try {
+			return CryptoHelpers.decryptFileHeaders(context, set, albumId, headers, false);
+		}
+		catch (IOException | CryptoException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Opens an upload session on the server, or continues the stored one if the file did not change since.
+	 * If the server refuses the session the stored one is forgotten, so the file is uploaded in one request instead.
+	 * It is kept only if the server could not be reached.
+	 *
+	 * @return the session with the offset acknowledged by the server, null if the server does not take uploads in parts
+	 */
+	private UploadSessionsDb.Session startPartUpload(HashMap<String, String> postParams, String filename, File file){
+		UploadSessionsDb.Session session = uploadSessionsDb.getSession(filename);
+		if(session != null && (session.fileSize != file.length() || session.dateModified != file.lastModified())){
+			// Encrypted again since the upload started
+			uploadSessionsDb.deleteSession(filename);
+			session = null;
+		}
+
+		HashMap<String, String> params = new HashMap<>(postParams);
+		params.put("file", filename);
+		params.put("fileSize", String.valueOf(file.length()));
+		params.put("uploadId", (session != null ? session.uploadId : ""));
+
+		JSONObject resp = HttpsClient.postFunc(StinglePhotosApplication.getApiUrl() + context.getString(R.string.upload_start_path), params);
+		if(resp == null){
+			return null;
+		}
+		StingleResponse response = new StingleResponse(this.context, resp, false);
+		if(!response.isStatusOk()){
+			uploadSessionsDb.deleteSession(filename);
+			return null;
+		}
+
+		String uploadId = response.get("uploadId");
+		long offset = parseOffset(response.get("offset"));
+		if(uploadId == null || uploadId.length() == 0 || offset < 0 || offset > file.length()){
+			uploadSessionsDb.deleteSession(filename);
+			return null;
+		}
+
+		session = new UploadSessionsDb.Session(filename, uploadId, offset, file.length(), file.lastModified());
+		uploadSessionsDb.saveSession(session);
+		return session;
+	}
+
+	/**
+	 * Sends the rest of the file in parts which end on chunk frame boundaries and finishes the upload with the thumbnail.
+	 * The offset acknowledged by the server is stored after every part, so a stopped upload continues from there.
+	 *
+	 * @return response of the finish request, null if the upload did not finish
+	 */
+	private StingleResponse uploadParts(UploadSessionsDb.Session session, Crypto.Header header, File file, File thumb){
+		String token = KeyManagement.getApiToken(context);
+		int framesPerPart = Math.max(1, PART_SIZE / DecryptingFileChannel.getFrameSize(header));
+		int failures = 0;
+
+		while (session.offset < session.fileSize) {
+			if(task != null && task.isCancelled()){
+				return null;
+			}
+
+			long end = getPartEnd(header, framesPerPart, session.offset, session.fileSize);
+
+			HashMap<String, String> params = new HashMap<>();
+			params.put("token", token);
+			params.put("uploadId", session.uploadId);
+			params.put("offset", String.valueOf(session.offset));
+
+			HttpsClient.FileToUpload part = new HttpsClient.FileToUpload("part", file.getPath(), SyncManager.SP_FILE_MIME_TYPE, session.offset, end - session.offset);
+			JSONObject resp = HttpsClient.multipartUpload(StinglePhotosApplication.getApiUrl() + context.getString(R.string.upload_part_path), params, part);
+			StingleResponse response = new StingleResponse(this.context, resp, false);
+
+			long acknowledged = (response.isStatusOk() ? parseOffset(response.get("offset")) : -1);
+			boolean isValid = acknowledged >= 0 && acknowledged <= session.fileSize;
+			if(isValid && acknowledged > session.offset){
+				failures = 0;
+			}
+			else if(++failures >= PART_ATTEMPTS){
+				return null;
+			}
+			else {
+				try {
+					Thread.sleep(PART_RETRY_DELAY * failures);
+				}
+				catch (InterruptedException e) {
+					return null;
+				}
+			}
+
+			if(isValid && acknowledged != session.offset){
+				// The server decides where to continue, it can also ask for data it lost
+				session.offset = acknowledged;
+				uploadSessionsDb.saveSession(session);
+			}
+		}
+
+		HashMap<String, String> params = new HashMap<>();
+		params.put("token", token);
+		params.put("uploadId", session.uploadId);
+
+		HttpsClient.FileToUpload thumbToUpload = new HttpsClient.FileToUpload("thumb", thumb.getPath(), SyncManager.SP_FILE_MIME_TYPE);
+		JSONObject resp = HttpsClient.multipartUpload(StinglePhotosApplication.getApiUrl() + context.getString(R.string.upload_finish_path), params, thumbToUpload);
+		StingleResponse response = new StingleResponse(this.context, resp, false);
+		if(!response.isStatusOk()){
+			return null;
+		}
+
+		uploadSessionsDb.deleteSession(session.filename);
+		return response;
+	}
+
+	/**
+	 * End of the part which starts at offset. The first part also carries the file header.
+	 */
+	private static long getPartEnd(Crypto.Header header, int framesPerPart, long offset, long fileSize){
+		long framesDone = Math.max(0, (offset - header.overallHeaderSize) / DecryptingFileChannel.getFrameSize(header));
+		return Math.min(fileSize, DecryptingFileChannel.getFrameOffset(header, framesDone + 1 + framesPerPart));
+	}
+
+	private static long parseOffset(String offsetStr){
+		if(offsetStr == null || offsetStr.length() == 0){
+			return -1;
+		}
+		try {
+			return Long.parseLong(offsetStr);
+		}
+		catch (NumberFormatException e) {
+			return -1;
+		}
 	}
 
-	private void notifyGalleryAboutProgress(String filename, String headers, int set, String albumId){
+	private synchronized void notifyGalleryAboutProgress(String filename, String headers, int set, String albumId){
 		Bundle params = new Bundle();
 		params.putInt("totalFilesCount", totalFilesCount);
-		params.putInt("uploadedFilesCount", uploadedFilesCount);
+		params.putInt("uploadedFilesCount", uploadedFilesCount.get());
 		params.putString("filename", filename);
 		params.putString("headers", headers);
 		params.putInt("set", set);
 		params.putString("albumId", albumId);
 
 		SyncManager.setSyncStatus(context, SyncManager.STATUS_UPLOADING, params);
-		updateNotification(totalFilesCount, uploadedFilesCount);
+		updateNotification(totalFilesCount, uploadedFilesCount.get());
 	}
 
 	private void showNotification() {
@@ -34,6 +34,8 @@ import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import org.stingle.photos.CameraX.CameraImageSize;
 import org.stingle.photos.Crypto.Crypto;
 import org.stingle.photos.Crypto.CryptoException;
+import org.stingle.photos.Crypto.DecryptingFileChannel;
+import org.stingle.photos.Crypto.EncryptingOutputStream;
 import org.stingle.photos.Db.Query.GalleryTrashDb;
 import org.stingle.photos.Files.FileManager;
 import org.stingle.photos.R;
@@ -42,12 +44,12 @@ import org.stingle.photos.Sync.SyncManager;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -201,12 +203,18 @@ public class Helpers {
 		if (bitmap != null) {
 			//thumbBitmap = Helpers.getThumbFromBitmap(bitmap, getThumbSize(activity));
 
-			ByteArrayOutputStream stream = new ByteArrayOutputStream();
-			bitmap.compress(Bitmap.CompressFormat.PNG, 90, stream);
-
-			FileOutputStream out = new FileOutputStream(FileManager.getThumbsDir(context) + "/" + encFilename);
-			StinglePhotosApplication.getCrypto().encryptFile(out, stream.toByteArray(), realFileName, type, fileId, videoDuration);
-			out.close();
+			File thumbFile = new File(FileManager.getThumbsDir(context) + "/" + encFilename);
+			try (FileOutputStream out = new FileOutputStream(thumbFile);
+				 EncryptingOutputStream encOut = new EncryptingOutputStream(StinglePhotosApplication.getCrypto(), out, realFileName, type, EncryptingOutputStream.DATA_SIZE_UNKNOWN, fileId, videoDuration)) {
+				if (!bitmap.compress(Bitmap.CompressFormat.PNG, 90, encOut)) {
+					throw new IOException("Unable to compress thumbnail of " + encFilename);
+				}
+			}
+			catch (IOException | CryptoException | RuntimeException e) {
+				// A half written thumbnail would be taken for a valid one
+				thumbFile.delete();
+				throw e;
+			}
 
 			//Helpers.getAESCrypt(activity).encrypt(stream.toByteArray(), out);
 		}
@@ -294,41 +302,57 @@ public class Helpers {
 	
 	public static Bitmap decodeBitmap(byte[] data, int requiredSize, boolean isFront) {
 		if(data != null){
-			Integer rotation = getExifRotation(new BufferedInputStream(new ByteArrayInputStream(data)));
-			
-			if(rotation == 90 && isFront){
-				rotation = 270;
-			}
-			else if(rotation == 270 && isFront){
-				rotation = 90;
-			}
-			
-			// Decode image size
-			BitmapFactory.Options o = new BitmapFactory.Options();
-			o.inJustDecodeBounds = true;
-			BitmapFactory.decodeByteArray(data, 0, data.length, o);
-	
-			// Find the correct scale value. It should be the power of 2.
-			requiredSize = requiredSize * requiredSize;
-			int scale = 1;
-		    while ((o.outWidth * o.outHeight) * (1 / Math.pow(scale, 2)) > requiredSize) {
-		    	scale++;
-		    }
-			
-			// Decode with inSampleSize
-			BitmapFactory.Options o2 = new BitmapFactory.Options();
-			o2.inSampleSize = scale;
-			
-			if(rotation != null){
-				return getRotatedBitmap(BitmapFactory.decodeByteArray(data, 0, data.length, o2), rotation);
-			}
-			else{
-				return BitmapFactory.decodeByteArray(data, 0, data.length, o2);
-			}
+			return decodeBitmap(() -> new ByteArrayInputStream(data), requiredSize, isFront);
 		}
 		return null;
 	}
 	
+	/**
+	 * Decodes a photo straight from the encrypted file. Only the first chunks are decrypted to read the
+	 * rotation and the size, the whole photo is decrypted once while decoding without keeping it in memory.
+	 */
+	public static Bitmap decodeBitmap(DecryptingFileChannel channel, int requiredSize) {
+		return decodeBitmap(() -> new BufferedInputStream(Channels.newInputStream(channel.position(0))), requiredSize, false);
+	}
+
+	private interface ImageSource {
+		// Every call starts from the beginning of the image
+		InputStream open();
+	}
+
+	private static Bitmap decodeBitmap(ImageSource source, int requiredSize, boolean isFront) {
+		Integer rotation = getExifRotation(new BufferedInputStream(source.open()));
+
+		if(rotation == 90 && isFront){
+			rotation = 270;
+		}
+		else if(rotation == 270 && isFront){
+			rotation = 90;
+		}
+
+		// Decode image size
+		BitmapFactory.Options o = new BitmapFactory.Options();
+		o.inJustDecodeBounds = true;
+		BitmapFactory.decodeStream(source.open(), null, o);
+
+		// Find the correct scale value. It should be the power of 2.
+		requiredSize = requiredSize * requiredSize;
+		int scale = 1;
+		while ((o.outWidth * o.outHeight) * (1 / Math.pow(scale, 2)) > requiredSize) {
+			scale++;
+		}
+
+		// Decode with inSampleSize
+		BitmapFactory.Options o2 = new BitmapFactory.Options();
+		o2.inSampleSize = scale;
+
+		Bitmap bitmap = BitmapFactory.decodeStream(source.open(), null, o2);
+		if(bitmap != null && rotation != null){
+			return getRotatedBitmap(bitmap, rotation);
+		}
+		return bitmap;
+	}
+
 	public static String getRealPathFromURI(Activity activity, Uri contentUri) {
         String[] proj = { MediaStore.Images.Media.DATA };
         Cursor cursor = activity.getContentResolver().query(contentUri, proj, null, null, null);
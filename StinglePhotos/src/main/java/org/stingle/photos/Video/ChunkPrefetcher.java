@@ -0,0 +1,184 @@
+package org.stingle.photos.Video;
+
+import com.goterl.lazycode.lazysodium.SodiumAndroid;
+
+import org.stingle.photos.Crypto.ChunkCodec;
+import org.stingle.photos.Crypto.Crypto;
+import org.stingle.photos.Crypto.CryptoException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Reads and decrypts the next chunks of a video on a helper thread while the player consumes the current one.
+ *
+ * Decrypted chunks are kept in a ring of codecs which is bounded by a memory cap.
+ * The helper thread owns the upstream source until {@link #cancel} returns.
+ */
+public class ChunkPrefetcher {
+
+	public static final int DEFAULT_MEMORY_CAP = 1024 * 1024 * 8;
+
+	private static final int CANCEL_WAIT_MS = 200;
+
+	public interface FrameReader {
+		/**
+		 * Reads the next nonce + ciphertext + tag frame into the codec.
+		 *
+		 * @return false if there are no more frames
+		 */
+		boolean readFrame(ChunkCodec codec) throws IOException, CryptoException;
+	}
+
+	public static class Chunk {
+		public final long number;
+		public final ChunkCodec codec;
+		private final Exception error;
+
+		private Chunk(long number, ChunkCodec codec, Exception error){
+			this.number = number;
+			this.codec = codec;
+			this.error = error;
+		}
+	}
+
+	private final FrameReader reader;
+	private final Runnable abortRead;
+	private final ArrayList<ChunkCodec> codecs = new ArrayList<>();
+	private final ArrayBlockingQueue<ChunkCodec> free;
+	private final ArrayBlockingQueue<Chunk> ready;
+	private final Thread thread;
+	private volatile boolean cancelled = false;
+
+	/**
+	 * @param firstChunkNumber number of the chunk the upstream source is positioned at
+	 * @param memoryCap maximum memory for decrypted chunks, at least two chunks are always used
+	 * @param abortRead makes a blocked upstream read fail, e.g. by disconnecting it, interrupting does not unblock socket reads.
+	 *                  It is called from another thread, so it must not close the upstream source.
+	 */
+	public ChunkPrefetcher(SodiumAndroid so, Crypto.Header header, long firstChunkNumber, int memoryCap, FrameReader reader, Runnable abortRead) throws CryptoException {
+		this.reader = reader;
+		this.abortRead = abortRead;
+
+		ChunkCodec first = ChunkCodec.obtain(so, header.chunkSize, header.symmetricKey);
+		int slots = Math.max(2, memoryCap / first.getMemorySize());
+		codecs.add(first);
+		for(int i = 1; i < slots; i++){
+			codecs.add(ChunkCodec.obtain(so, header.chunkSize, header.symmetricKey));
+		}
+
+		free = new ArrayBlockingQueue<>(slots, false, codecs);
+		ready = new ArrayBlockingQueue<>(slots + 1);
+
+		thread = new Thread(() -> prefetch(firstChunkNumber), "ChunkPrefetcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void prefetch(long chunkNumber){
+		try {
+			while (!cancelled) {
+				ChunkCodec codec = free.take();
+				if(!reader.readFrame(codec)){
+					free.put(codec);
+					ready.put(new Chunk(chunkNumber, null, null));
+					return;
+				}
+				codec.decrypt(chunkNumber);
+				ready.put(new Chunk(chunkNumber, codec, null));
+				chunkNumber++;
+			}
+		}
+		catch (InterruptedException ignored) {
+		}
+		catch (IOException | CryptoException e) {
+			if(!cancelled) {
+				ready.offer(new Chunk(chunkNumber, null, e));
+			}
+		}
+		catch (RuntimeException e) {
+			// Must not take the app down from this thread, the player gets it as a read error
+			if(!cancelled) {
+				ready.offer(new Chunk(chunkNumber, null, new IOException(e)));
+			}
+		}
+	}
+
+	/**
+	 * Waits for the next decrypted chunk. The codec of the returned chunk must be given back with {@link #release}.
+	 *
+	 * @return the chunk or null if the end of the data was reached
+	 */
+	public Chunk take() throws IOException, CryptoException {
+		Chunk chunk;
+		try {
+			chunk = ready.take();
+		}
+		catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		}
+
+		if(chunk.error != null){
+			if(chunk.error instanceof CryptoException){
+				throw (CryptoException) chunk.error;
+			}
+			throw (IOException) chunk.error;
+		}
+		if(chunk.codec == null){
+			// Keep the end marker for the following calls
+			ready.offer(chunk);
+			return null;
+		}
+		return chunk;
+	}
+
+	/**
+	 * @return how many chunks can be decrypted ahead
+	 */
+	public int getCapacity(){
+		return codecs.size();
+	}
+
+	public void release(ChunkCodec codec){
+		if(codec != null && !cancelled) {
+			free.offer(codec);
+		}
+	}
+
+	/**
+	 * Stops the helper thread and waits until it does not touch the upstream source anymore.
+	 * If the thread is still reading after a short wait the read is aborted, so the upstream source has to be reopened afterwards.
+	 * Codecs of all chunks, including the ones taken, are recycled.
+	 */
+	public void cancel(){
+		if(cancelled){
+			return;
+		}
+		cancelled = true;
+		thread.interrupt();
+		boolean interrupted = false;
+		while (thread.isAlive()) {
+			try {
+				thread.join(CANCEL_WAIT_MS);
+			}
+			catch (InterruptedException e) {
+				interrupted = true;
+			}
+			if(thread.isAlive()){
+				abortRead.run();
+			}
+		}
+		if(interrupted){
+			Thread.currentThread().interrupt();
+		}
+
+		free.clear();
+		ready.clear();
+		for(ChunkCodec codec : codecs){
+			codec.recycle();
+		}
+		codecs.clear();
+	}
+}
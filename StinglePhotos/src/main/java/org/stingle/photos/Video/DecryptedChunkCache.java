@@ -0,0 +1,60 @@
+package org.stingle.photos.Video;
+
+import android.util.LruCache;
+
+import java.util.Arrays;
+
+/**
+ * Keeps recently decrypted chunks of a video, so seeking back into an already played region
+ * does not read or decrypt anything again.
+ *
+ * Entries are keyed by the file and the chunk number and the cache is bounded by the size of the kept plaintext.
+ * It holds decrypted data, so it has to be cleared as soon as the player which uses it is released.
+ * Returned chunks are not copied and a data source may still read an evicted one, so chunks are wiped only on {@link #clear}.
+ */
+public class DecryptedChunkCache {
+
+	public static final int DEFAULT_MAX_BYTES = 1024 * 1024 * 16;
+
+	private final LruCache<String, byte[]> cache;
+
+	public DecryptedChunkCache(){
+		this(DEFAULT_MAX_BYTES);
+	}
+
+	public DecryptedChunkCache(int maxBytes){
+		cache = new LruCache<String, byte[]>(maxBytes) {
+			@Override
+			protected int sizeOf(String key, byte[] chunk) {
+				return chunk.length;
+			}
+		};
+	}
+
+	private static String getCacheKey(String fileKey, long chunkNumber){
+		return fileKey + ":" + chunkNumber;
+	}
+
+	/**
+	 * @return plaintext of the chunk, the whole array is the chunk, or null if it is not cached
+	 */
+	public byte[] get(String fileKey, long chunkNumber){
+		return cache.get(getCacheKey(fileKey, chunkNumber));
+	}
+
+	public void put(String fileKey, long chunkNumber, byte[] plain, int length){
+		if(length > 0 && length <= cache.maxSize()) {
+			cache.put(getCacheKey(fileKey, chunkNumber), Arrays.copyOf(plain, length));
+		}
+	}
+
+	/**
+	 * Wipes and drops all chunks, must be called only after the player which reads them is released
+	 */
+	public void clear(){
+		for(byte[] chunk : cache.snapshot().values()){
+			Arrays.fill(chunk, (byte) 0);
+		}
+		cache.evictAll();
+	}
+}
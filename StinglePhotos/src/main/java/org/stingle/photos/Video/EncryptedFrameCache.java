@@ -0,0 +1,184 @@
+package org.stingle.photos.Video;
+
+import android.content.Context;
+
+import org.stingle.photos.Crypto.ChunkCodec;
+import org.stingle.photos.Crypto.Crypto;
+import org.stingle.photos.Crypto.CryptoException;
+import org.stingle.photos.Util.Helpers;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Keeps encrypted nonce + ciphertext + tag frames of remote videos on disk, one file per chunk,
+ * so replaying or seeking in a cloud video only downloads the chunks which were never fetched.
+ *
+ * Frames are stored exactly as they are in the Stingle file, so nothing readable is written to disk.
+ * The cache is bounded by size, least recently used frames are deleted first.
+ */
+public class EncryptedFrameCache {
+
+	public static final String CACHE_DIR = "videoCache";
+	public static final long DEFAULT_MAX_BYTES = 1024L * 1024 * 256;
+
+	private static EncryptedFrameCache instance;
+
+	private final File dir;
+	private final long maxBytes;
+	private long totalBytes = -1;
+
+	public static synchronized EncryptedFrameCache getInstance(Context context){
+		if(instance == null){
+			instance = new EncryptedFrameCache(new File(context.getCacheDir().getPath() + "/" + CACHE_DIR), DEFAULT_MAX_BYTES);
+		}
+		return instance;
+	}
+
+	public EncryptedFrameCache(File dir, long maxBytes){
+		this.dir = dir;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Key of the file in the cache. A new version of a file can keep its file id, what tells the versions apart is
+	 * the symmetric key, which is random for every encryption. So the key includes a hash of the symmetric key,
+	 * together with the file format version and the chunk size which decide the layout of the frames.
+	 */
+	public static String getFileKey(Crypto.Header header){
+		ByteBuffer buf = ByteBuffer.allocate(8 + header.symmetricKey.length);
+		buf.putInt(header.fileVersion);
+		buf.putInt(header.chunkSize);
+		buf.put(header.symmetricKey);
+		byte[] hash = Crypto.sha256(buf.array());
+		return Crypto.byte2hex(header.fileId) + "-" + Crypto.byte2hex(Arrays.copyOf(hash, 16));
+	}
+
+	private File getFrameFile(String fileKey, long chunkNumber){
+		return new File(dir, fileKey + "/" + chunkNumber);
+	}
+
+	/**
+	 * Loads the cached frame of the chunk into the codec.
+	 *
+	 * @return false if the frame is not cached
+	 */
+	public synchronized boolean get(String fileKey, long chunkNumber, ChunkCodec codec) {
+		File file = getFrameFile(fileKey, chunkNumber);
+		if(!file.exists()){
+			return false;
+		}
+		try (FileInputStream in = new FileInputStream(file)) {
+			if(codec.readFrame(in) < 0){
+				throw new CryptoException("Empty frame");
+			}
+		}
+		catch (IOException | CryptoException e) {
+			remove(fileKey, chunkNumber);
+			return false;
+		}
+		file.setLastModified(System.currentTimeMillis());
+		return true;
+	}
+
+	/**
+	 * Stores the frame currently held by the codec, does nothing if it is already cached
+	 */
+	public synchronized void put(String fileKey, long chunkNumber, ChunkCodec codec) {
+		File file = getFrameFile(fileKey, chunkNumber);
+		if(file.exists()){
+			return;
+		}
+		File tmpFile = new File(file.getPath() + ".tmp");
+		if(!file.getParentFile().exists() && !file.getParentFile().mkdirs()){
+			return;
+		}
+		try (FileOutputStream out = new FileOutputStream(tmpFile)) {
+			codec.writeFrame(out);
+		}
+		catch (IOException e) {
+			tmpFile.delete();
+			return;
+		}
+		if(!tmpFile.renameTo(file)){
+			tmpFile.delete();
+			return;
+		}
+
+		getTotalBytes();
+		totalBytes += file.length();
+		if(totalBytes > maxBytes){
+			trim();
+		}
+	}
+
+	public synchronized void remove(String fileKey, long chunkNumber) {
+		File file = getFrameFile(fileKey, chunkNumber);
+		long length = file.length();
+		if(file.delete() && totalBytes >= 0){
+			totalBytes -= length;
+		}
+	}
+
+	public synchronized void clear() {
+		Helpers.deleteFolderRecursive(dir);
+		totalBytes = 0;
+	}
+
+	private long getTotalBytes(){
+		if(totalBytes < 0){
+			totalBytes = 0;
+			for(File file : listFrameFiles()){
+				totalBytes += file.length();
+			}
+		}
+		return totalBytes;
+	}
+
+	private ArrayList<File> listFrameFiles(){
+		ArrayList<File> frames = new ArrayList<>();
+		File[] fileDirs = dir.listFiles();
+		if(fileDirs == null){
+			return frames;
+		}
+		for(File fileDir : fileDirs){
+			File[] files = fileDir.listFiles();
+			if(files != null){
+				frames.addAll(Arrays.asList(files));
+			}
+		}
+		return frames;
+	}
+
+	/**
+	 * Deletes least recently used frames until the cache fits into its size
+	 */
+	private void trim(){
+		ArrayList<File> frames = listFrameFiles();
+		long[] lastUsed = new long[frames.size()];
+		Integer[] order = new Integer[frames.size()];
+		for(int i = 0; i < frames.size(); i++){
+			lastUsed[i] = frames.get(i).lastModified();
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Long.compare(lastUsed[a], lastUsed[b]));
+
+		for(int i = 0; i < order.length && totalBytes > maxBytes; i++){
+			File file = frames.get(order[i]);
+			long length = file.length();
+			if(file.delete()){
+				totalBytes -= length;
+			}
+			File fileDir = file.getParentFile();
+			String[] left = fileDir.list();
+			if(left != null && left.length == 0){
+				fileDir.delete();
+			}
+		}
+	}
+}
@@ -0,0 +1,196 @@
+package org.stingle.photos.Video;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+
+import org.stingle.photos.Crypto.Crypto;
+import org.stingle.photos.Crypto.CryptoException;
+import org.stingle.photos.Crypto.DecryptingInputStream;
+import org.stingle.photos.Crypto.EncryptingOutputStream;
+import org.stingle.photos.Files.FileManager;
+import org.stingle.photos.StinglePhotosApplication;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Low resolution frames of a video taken at fixed intervals and packed into one sprite image,
+ * shown above the seek bar while scrubbing instead of decoding the real video.
+ *
+ * The strip is stored next to the thumbnail of the video as a separate Stingle file with the same file id.
+ * Its plaintext is a small layout header followed by the JPEG sprite.
+ */
+public class PreviewStrip {
+
+	public static final String FILE_SUFFIX = ".preview";
+
+	private static final int FORMAT_VERSION = 1;
+	private static final int FRAME_INTERVAL = 5000;
+	private static final int MAX_FRAMES = 100;
+	private static final int COLUMNS = 10;
+	private static final int TILE_WIDTH = 160;
+	private static final int JPEG_QUALITY = 60;
+
+	public final int interval;
+	public final int frameCount;
+	public final int tileWidth;
+	public final int tileHeight;
+	private final int columns;
+	private final Bitmap sprite;
+
+	private PreviewStrip(int interval, int frameCount, int columns, int tileWidth, int tileHeight, Bitmap sprite){
+		this.interval = interval;
+		this.frameCount = frameCount;
+		this.columns = columns;
+		this.tileWidth = tileWidth;
+		this.tileHeight = tileHeight;
+		this.sprite = sprite;
+	}
+
+	public static File getFile(Context context, String encFilename){
+		return new File(FileManager.getThumbsDir(context) + "/" + encFilename + FILE_SUFFIX);
+	}
+
+	/**
+	 * Takes frames from the plain video and writes the encrypted strip for the given encrypted filename.
+	 * The strip is optional, so failures are not thrown.
+	 *
+	 * @return false if the strip could not be made
+	 */
+	public static boolean generate(Context context, Uri uri, String encFilename, String realFilename, byte[] fileId, int videoDuration) {
+		MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+		Bitmap sprite = null;
+		int interval;
+		int frameCount;
+		int tileHeight = 0;
+		try {
+			retriever.setDataSource(context, uri);
+
+			long duration = videoDuration * 1000L;
+			String durationStr = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+			if(durationStr != null) {
+				duration = Long.parseLong(durationStr);
+			}
+			if(duration <= 0){
+				return false;
+			}
+
+			interval = (int) Math.max(FRAME_INTERVAL, (duration + MAX_FRAMES - 1) / MAX_FRAMES);
+			frameCount = (int) ((duration + interval - 1) / interval);
+			int rows = (frameCount + COLUMNS - 1) / COLUMNS;
+
+			Canvas canvas = null;
+			for (int i = 0; i < frameCount; i++) {
+				Bitmap frame = retriever.getFrameAtTime(i * interval * 1000L, MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
+				if (frame == null) {
+					continue;
+				}
+				if (sprite == null) {
+					tileHeight = Math.max(1, TILE_WIDTH * frame.getHeight() / frame.getWidth());
+					sprite = Bitmap.createBitmap(TILE_WIDTH * COLUMNS, tileHeight * rows, Bitmap.Config.RGB_565);
+					canvas = new Canvas(sprite);
+				}
+				int left = (i % COLUMNS) * TILE_WIDTH;
+				int top = (i / COLUMNS) * tileHeight;
+				canvas.drawBitmap(frame, null, new Rect(left, top, left + TILE_WIDTH, top + tileHeight), null);
+				frame.recycle();
+			}
+		}
+		catch (RuntimeException e){
+			return false;
+		}
+		finally {
+			retriever.release();
+		}
+
+		if(sprite == null){
+			return false;
+		}
+
+		File file = getFile(context, encFilename);
+		// The file is closed before a partly written strip is deleted, also when the header can't be written
+		try (FileOutputStream out = new FileOutputStream(file);
+			 DataOutputStream dataOut = new DataOutputStream(new EncryptingOutputStream(StinglePhotosApplication.getCrypto(), out, realFilename, Crypto.FILE_TYPE_VIDEO, EncryptingOutputStream.DATA_SIZE_UNKNOWN, fileId, videoDuration))) {
+			dataOut.writeInt(FORMAT_VERSION);
+			dataOut.writeInt(interval);
+			dataOut.writeInt(frameCount);
+			dataOut.writeInt(COLUMNS);
+			dataOut.writeInt(TILE_WIDTH);
+			dataOut.writeInt(tileHeight);
+			sprite.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, dataOut);
+		}
+		catch (IOException | CryptoException e) {
+			e.printStackTrace();
+			file.delete();
+			return false;
+		}
+		finally {
+			sprite.recycle();
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return the strip of the given encrypted file or null if there is none
+	 */
+	public static PreviewStrip load(Context context, String encFilename) {
+		File file = getFile(context, encFilename);
+		if(!file.exists()){
+			return null;
+		}
+
+		try (DataInputStream in = new DataInputStream(new DecryptingInputStream(StinglePhotosApplication.getCrypto(), new FileInputStream(file)))) {
+			if(in.readInt() != FORMAT_VERSION){
+				return null;
+			}
+			int interval = in.readInt();
+			int frameCount = in.readInt();
+			int columns = in.readInt();
+			int tileWidth = in.readInt();
+			int tileHeight = in.readInt();
+			if(interval <= 0 || frameCount <= 0 || columns <= 0 || tileWidth <= 0 || tileHeight <= 0){
+				return null;
+			}
+			Bitmap sprite = BitmapFactory.decodeStream(in);
+			if(sprite == null){
+				return null;
+			}
+			return new PreviewStrip(interval, frameCount, columns, tileWidth, tileHeight, sprite);
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+
+	public static void delete(Context context, String encFilename){
+		File file = getFile(context, encFilename);
+		if(file.exists()){
+			file.delete();
+		}
+	}
+
+	/**
+	 * @param position position in the video in milliseconds
+	 * @return area of the sprite with the frame closest before the position
+	 */
+	public Rect getFrameRect(long position){
+		int index = (int) Math.max(0, Math.min(frameCount - 1, position / interval));
+		int left = (index % columns) * tileWidth;
+		int top = (index / columns) * tileHeight;
+		return new Rect(left, top, left + tileWidth, top + tileHeight);
+	}
+
+	public Bitmap getSprite(){
+		return sprite;
+	}
+}
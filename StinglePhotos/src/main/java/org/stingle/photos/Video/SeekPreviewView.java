@@ -0,0 +1,116 @@
+package org.stingle.photos.Video;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.view.Gravity;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.ui.PlayerView;
+import com.google.android.exoplayer2.ui.TimeBar;
+
+import org.stingle.photos.R;
+import org.stingle.photos.Util.Helpers;
+
+/**
+ * Shows the frame of the {@link PreviewStrip} for the scrubbed position above the seek bar of a player.
+ */
+@SuppressLint("ViewConstructor")
+public class SeekPreviewView extends View implements TimeBar.OnScrubListener {
+
+	private static final int WIDTH_DP = 160;
+	private static final int MARGIN_DP = 8;
+
+	private final PreviewStrip strip;
+	private final Player player;
+	private final View timeBar;
+	private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+	private final Rect destination = new Rect();
+	private final int[] location = new int[2];
+	private Rect source;
+
+	private SeekPreviewView(Context context, PreviewStrip strip, Player player, View timeBar) {
+		super(context);
+		this.strip = strip;
+		this.player = player;
+		this.timeBar = timeBar;
+	}
+
+	/**
+	 * Adds the preview to the player view and starts following the scrubbing of its seek bar
+	 *
+	 * @return the preview or null if the player view has no seek bar
+	 */
+	public static SeekPreviewView attach(PlayerView playerView, Player player, PreviewStrip strip){
+		View timeBar = playerView.findViewById(R.id.exo_progress);
+		if(!(timeBar instanceof TimeBar)){
+			return null;
+		}
+
+		Context context = playerView.getContext();
+		SeekPreviewView view = new SeekPreviewView(context, strip, player, timeBar);
+		int width = Helpers.convertDpToPixels(context, WIDTH_DP);
+		int height = width * strip.tileHeight / strip.tileWidth;
+		view.setVisibility(View.GONE);
+		playerView.addView(view, new FrameLayout.LayoutParams(width, height, Gravity.TOP | Gravity.START));
+		((TimeBar) timeBar).addListener(view);
+
+		return view;
+	}
+
+	@Override
+	public void onScrubStart(TimeBar timeBar, long position) {
+		show(position);
+	}
+
+	@Override
+	public void onScrubMove(TimeBar timeBar, long position) {
+		show(position);
+	}
+
+	@Override
+	public void onScrubStop(TimeBar timeBar, long position, boolean canceled) {
+		setVisibility(View.GONE);
+	}
+
+	private void show(long position){
+		long duration = player.getDuration();
+		ViewGroup parent = (ViewGroup) getParent();
+		if(duration == C.TIME_UNSET || duration <= 0 || parent == null){
+			return;
+		}
+		source = strip.getFrameRect(position);
+
+		// Centered above the scrubbed position, kept inside the player
+		int width = getLayoutParams().width;
+		int height = getLayoutParams().height;
+		parent.getLocationInWindow(location);
+		int parentX = location[0];
+		int parentY = location[1];
+		timeBar.getLocationInWindow(location);
+
+		float x = location[0] - parentX + timeBar.getWidth() * ((float) position / duration) - width / 2f;
+		x = Math.max(0, Math.min(parent.getWidth() - width, x));
+		float y = location[1] - parentY - height - Helpers.convertDpToPixels(getContext(), MARGIN_DP);
+
+		setTranslationX(x);
+		setTranslationY(Math.max(0, y));
+		setVisibility(View.VISIBLE);
+		invalidate();
+	}
+
+	@Override
+	protected void onDraw(Canvas canvas) {
+		super.onDraw(canvas);
+		if(source != null){
+			destination.set(0, 0, getWidth(), getHeight());
+			canvas.drawBitmap(strip.getSprite(), source, destination, paint);
+		}
+	}
+}
@@ -9,8 +9,10 @@ import com.google.android.exoplayer2.upstream.DataSpec;
 import com.goterl.lazycode.lazysodium.SodiumAndroid;
 import com.goterl.lazycode.lazysodium.interfaces.AEAD;
 
+import org.stingle.photos.Crypto.ChunkCodec;
 import org.stingle.photos.Crypto.Crypto;
 import org.stingle.photos.Crypto.CryptoException;
+import org.stingle.photos.Crypto.DecryptingFileChannel;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -30,13 +32,41 @@ public class StingleDataSource implements DataSource {
 	private int positionInChunk = 0;
 	private int currentChunkNumber = 1;
 	private byte[] currentChunk;
+	private int currentChunkLength = 0;
+	private ChunkCodec codec;
 	private DataSource upstream;
 
+	private boolean upstreamOpened = false;
+	private long upstreamChunkNumber;
+	private boolean reading = false;
+	private long nextFrameNumber;
+
+	private int prefetchMemory;
+	private ChunkPrefetcher prefetcher;
+	private ChunkCodec prefetchedCodec;
+	private long prefetcherChunkNumber;
+
+	private DecryptedChunkCache chunkCache;
+	private String chunkCacheKey;
+	private EncryptedFrameCache frameCache;
+
 	public StingleDataSource(Context context, DataSource upstream, Crypto.Header header) {
+		this(context, upstream, header, ChunkPrefetcher.DEFAULT_MEMORY_CAP, null, null);
+	}
+
+	/**
+	 * @param prefetchMemory memory for chunks decrypted ahead on a helper thread, 0 decrypts on the calling thread
+	 * @param chunkCache cache of decrypted chunks of this video or null
+	 * @param frameCache disk cache of encrypted frames for remote videos or null
+	 */
+	public StingleDataSource(Context context, DataSource upstream, Crypto.Header header, int prefetchMemory, DecryptedChunkCache chunkCache, EncryptedFrameCache frameCache) {
 		this.so = new SodiumAndroid();
 		this.crypto = new Crypto(context);
 		this.upstream = upstream;
 		this.header = header;
+		this.prefetchMemory = prefetchMemory;
+		this.chunkCache = chunkCache;
+		this.frameCache = frameCache;
 	}
 
 	private void getHeader(DataSpec dataSpec) throws IOException {
@@ -74,15 +104,17 @@ public class StingleDataSource implements DataSource {
 	@Override
 	public long open(DataSpec dataSpec) throws StingleDataSourceException {
 		try {
+			closeUpstream();
 			uri = dataSpec.uri;
 			if(header == null){
 				getHeader(dataSpec);
 			}
+			if(chunkCache != null || frameCache != null){
+				chunkCacheKey = EncryptedFrameCache.getFileKey(header);
+			}
 
-			long chunkOffset = header.overallHeaderSize;
 			if(dataSpec.absoluteStreamPosition > 0){
 				currentChunkNumber = (int) Math.floor(dataSpec.absoluteStreamPosition / header.chunkSize) + 1;
-				chunkOffset = header.overallHeaderSize +  (currentChunkNumber - 1) * (AEAD.XCHACHA20POLY1305_IETF_NPUBBYTES + header.chunkSize + AEAD.XCHACHA20POLY1305_IETF_ABYTES);
 
 				positionInChunk = (int)(dataSpec.absoluteStreamPosition - ((currentChunkNumber-1) * header.chunkSize));
 			}
@@ -91,8 +123,6 @@ public class StingleDataSource implements DataSource {
 				currentChunk = null;
 				currentChunkNumber = 1;
 			}
-			DataSpec specUp = new DataSpec(dataSpec.uri, chunkOffset, C.LENGTH_UNSET, null, 0);
-			upstream.open(specUp);
 
 			bytesRemaining = dataSpec.length == C.LENGTH_UNSET ? header.dataSize - dataSpec.position : dataSpec.length;
 			if (bytesRemaining < 0) {
@@ -118,38 +148,22 @@ public class StingleDataSource implements DataSource {
 		} else if (bytesRemaining == 0) {
 			return C.RESULT_END_OF_INPUT;
 		} else {
-			int bytesRead;
+			int bytesRead = 0;
 			int howMuchNeeded = (int) Math.min(bytesRemaining, readLength);
 			try {
-				int bytesRemainingInChunk = currentChunk.length - positionInChunk;
-				ByteArrayOutputStream data = new ByteArrayOutputStream();
-				while(data.size() < howMuchNeeded){
-					try {
-						if(bytesRemainingInChunk < howMuchNeeded){
-							byte[] neededBytes = Arrays.copyOfRange(currentChunk, positionInChunk, currentChunk.length);
-							howMuchNeeded -= currentChunk.length - positionInChunk;
-							data.write(neededBytes);
-							currentChunkNumber++;
-							positionInChunk = 0;
-							currentChunk = getChunk();
-							bytesRemainingInChunk = currentChunk.length;
-						}
-						else {
-							byte[] neededBytes = Arrays.copyOfRange(currentChunk, positionInChunk, positionInChunk+howMuchNeeded);
-							data.write(neededBytes);
-							positionInChunk += howMuchNeeded;
-						}
-
-					} catch (CryptoException e) {
-						throw new StingleDataSourceException(e);
+				// Copy straight from the decrypted chunk, the chunk buffer is refilled in place when it runs out
+				while(bytesRead < howMuchNeeded){
+					if(positionInChunk >= currentChunkLength){
+						currentChunkNumber++;
+						positionInChunk = 0;
+						currentChunk = getChunk();
 					}
-
+					int toCopy = Math.min(howMuchNeeded - bytesRead, currentChunkLength - positionInChunk);
+					System.arraycopy(currentChunk, positionInChunk, buffer, offset + bytesRead, toCopy);
+					positionInChunk += toCopy;
+					bytesRead += toCopy;
 				}
-
-				ByteArrayInputStream in = new ByteArrayInputStream(data.toByteArray());
-
-				bytesRead = in.read(buffer, offset, readLength);
-			} catch (IOException e) {
+			} catch (IOException | CryptoException e) {
 				throw new StingleDataSourceException(e);
 			}
 
@@ -162,30 +176,184 @@ public class StingleDataSource implements DataSource {
 	}
 
 	private byte[] getChunk() throws IOException, CryptoException {
-		byte[] chunkKey = new byte[AEAD.XCHACHA20POLY1305_IETF_KEYBYTES];
-		byte[] chunkNonce = new byte[AEAD.XCHACHA20POLY1305_IETF_NPUBBYTES];
-		byte[] contextBytes = Crypto.XCHACHA20POLY1305_IETF_CONTEXT.getBytes();
+		if(chunkCache != null){
+			byte[] cached = chunkCache.get(chunkCacheKey, currentChunkNumber);
+			if(cached != null){
+				// The prefetcher keeps going if it is about to reach this chunk anyway, its chunks up to here are skipped on the next miss
+				if(prefetcher != null && (currentChunkNumber < prefetcherChunkNumber || currentChunkNumber >= prefetcherChunkNumber + prefetcher.getCapacity())){
+					closeUpstream();
+				}
+				currentChunkLength = cached.length;
+				return cached;
+			}
+		}
 
-		byte[] encChunkBytes = new byte[header.chunkSize + AEAD.XCHACHA20POLY1305_IETF_ABYTES];
+		startReading();
+
+		ChunkCodec chunkCodec;
+		try {
+			if (prefetcher != null) {
+				prefetcher.release(prefetchedCodec);
+				prefetchedCodec = null;
+
+				ChunkPrefetcher.Chunk chunk;
+				while (true) {
+					chunk = prefetcher.take();
+					if (chunk == null) {
+						throw new EOFException();
+					}
+					prefetcherChunkNumber = chunk.number + 1;
+					if (chunk.number >= currentChunkNumber) {
+						break;
+					}
+					// Already served from the chunk cache
+					prefetcher.release(chunk.codec);
+				}
+				if (chunk.number != currentChunkNumber) {
+					prefetcher.release(chunk.codec);
+					throw new CryptoException("Unexpected chunk number");
+				}
+				prefetchedCodec = chunk.codec;
+				chunkCodec = chunk.codec;
+			}
+			else {
+				if (codec == null) {
+					codec = ChunkCodec.obtain(so, header.chunkSize, header.symmetricKey);
+				}
+				// Chunks served from the chunk cache are skipped, upstream is reopened only if it is not at this one
+				nextFrameNumber = currentChunkNumber;
+
+				if (!readFrame(codec)) {
+					throw new CryptoException("Invalid nonce length");
+				}
+				codec.decrypt(currentChunkNumber);
+				chunkCodec = codec;
+			}
+		}
+		catch (CryptoException e) {
+			// Don't serve a frame which does not authenticate again
+			if(frameCache != null){
+				frameCache.remove(chunkCacheKey, currentChunkNumber);
+			}
+			throw e;
+		}
+
+		// The codec still holds the authenticated frame after decryption
+		if(frameCache != null){
+			frameCache.put(chunkCacheKey, currentChunkNumber, chunkCodec);
+		}
+
+		currentChunkLength = chunkCodec.getPlainLength();
+		byte[] plain = chunkCodec.getPlain();
+		if(chunkCache != null){
+			chunkCache.put(chunkCacheKey, currentChunkNumber, plain, currentChunkLength);
+		}
+		return plain;
+	}
+
+	/**
+	 * Starts reading frames from the current chunk, unless it is already being read
+	 */
+	private void startReading() throws CryptoException {
+		if(reading){
+			return;
+		}
+		reading = true;
+		nextFrameNumber = currentChunkNumber;
+
+		if(prefetchMemory > 0){
+			prefetcherChunkNumber = currentChunkNumber;
+			prefetcher = new ChunkPrefetcher(so, header, currentChunkNumber, prefetchMemory, this::readFrame, this::abortUpstream);
+		}
+	}
+
+	/**
+	 * Breaks a blocked read of the prefetcher, so it can be stopped. Called from another thread, so upstream is not
+	 * closed here, a remote response would be kept for reuse while the prefetcher still reads it.
+	 * Local reads don't block, so only remote upstreams are aborted. Upstream is closed by closeUpstream afterwards.
+	 */
+	private void abortUpstream(){
+		if(upstream instanceof StingleHttpDataSource){
+			((StingleHttpDataSource) upstream).abort();
+		}
+	}
+
+	private void closeUpstream() throws IOException {
+		stopPrefetch();
+		reading = false;
+		if(upstreamOpened){
+			upstreamOpened = false;
+			upstream.close();
+		}
+	}
+
+	/**
+	 * Reads the next frame from the frame cache or from upstream. Upstream is opened only when a frame is missing
+	 * from the cache and is reopened at the missing frame if it is positioned elsewhere.
+	 */
+	private boolean readFrame(ChunkCodec codec) throws IOException, CryptoException {
+		long chunkNumber = nextFrameNumber;
+		if(chunkNumber > getChunksCount()){
+			return false;
+		}
+		nextFrameNumber++;
+
+		if(frameCache != null && frameCache.get(chunkCacheKey, chunkNumber, codec)){
+			return true;
+		}
+
+		if(upstreamOpened && upstreamChunkNumber != chunkNumber){
+			upstreamOpened = false;
+			upstream.close();
+		}
+		if(!upstreamOpened){
+			DataSpec specUp = new DataSpec(uri, DecryptingFileChannel.getFrameOffset(header, chunkNumber), C.LENGTH_UNSET, null, 0);
+			upstream.open(specUp);
+			upstreamOpened = true;
+			upstreamChunkNumber = chunkNumber;
+		}
 
 		int numRead;
-		numRead = upstream.read(chunkNonce, 0, chunkNonce.length);
+		numRead = readUpstream(codec.getNonce(), AEAD.XCHACHA20POLY1305_IETF_NPUBBYTES);
+		if(numRead == 0){
+			return false;
+		}
 		if(numRead != AEAD.XCHACHA20POLY1305_IETF_NPUBBYTES){
 			throw new CryptoException("Invalid nonce length");
 		}
 
-		numRead = upstream.read(encChunkBytes, 0, encChunkBytes.length);
+		numRead = readUpstream(codec.getCipher(), codec.getCipher().length);
+		codec.setCipherLength(numRead);
+		upstreamChunkNumber++;
+		return true;
+	}
 
-		so.crypto_kdf_derive_from_key(chunkKey, chunkKey.length, currentChunkNumber, contextBytes, header.symmetricKey);
+	private long getChunksCount(){
+		return (header.dataSize + header.chunkSize - 1) / header.chunkSize;
+	}
 
-		byte[] decBytes = new byte[header.chunkSize];
-		long[] decSize = new long[1];
-		if(so.crypto_aead_xchacha20poly1305_ietf_decrypt(decBytes, decSize, null, encChunkBytes, numRead, null, 0, chunkNonce, chunkKey) != 0){
-			throw new CryptoException("Error when decrypting data.");
+	private void stopPrefetch(){
+		if(prefetcher != null){
+			prefetcher.cancel();
+			prefetcher = null;
+			prefetchedCodec = null;
+			currentChunk = null;
 		}
+	}
 
-		return Arrays.copyOfRange(decBytes, 0, (int)decSize[0]);
-
+	/**
+	 * Upstream reads may return less than asked, keeps reading until the buffer is full or the input ends.
+	 */
+	private int readUpstream(byte[] buf, int length) throws IOException {
+		int total = 0;
+		while (total < length) {
+			int numRead = upstream.read(buf, total, length - total);
+			if(numRead == C.RESULT_END_OF_INPUT){
+				break;
+			}
+			total += numRead;
+		}
+		return total;
 	}
 
 	@Override
@@ -196,8 +364,14 @@ public class StingleDataSource implements DataSource {
 	@Override
 	public void close() throws StingleDataSourceException {
 		uri = null;
+		stopPrefetch();
+		if(codec != null){
+			codec.recycle();
+			codec = null;
+			currentChunk = null;
+		}
 		try {
-			upstream.close();
+			closeUpstream();
 		} catch (IOException e) {
 			throw new StingleDataSourceException(e);
 		}
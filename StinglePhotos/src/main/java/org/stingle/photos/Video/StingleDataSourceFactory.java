@@ -12,15 +12,33 @@ public class StingleDataSourceFactory  implements DataSource.Factory {
 	private Context context;
 	private DataSource upstream;
 	private Crypto.Header header;
+	private int prefetchMemory;
+	private DecryptedChunkCache chunkCache;
+	private EncryptedFrameCache frameCache;
 
 	public StingleDataSourceFactory(Context context, DataSource upstream, Crypto.Header header) {
+		this(context, upstream, header, ChunkPrefetcher.DEFAULT_MEMORY_CAP, null, null);
+	}
+
+	public StingleDataSourceFactory(Context context, DataSource upstream, Crypto.Header header, DecryptedChunkCache chunkCache) {
+		this(context, upstream, header, ChunkPrefetcher.DEFAULT_MEMORY_CAP, chunkCache, null);
+	}
+
+	public StingleDataSourceFactory(Context context, DataSource upstream, Crypto.Header header, DecryptedChunkCache chunkCache, EncryptedFrameCache frameCache) {
+		this(context, upstream, header, ChunkPrefetcher.DEFAULT_MEMORY_CAP, chunkCache, frameCache);
+	}
+
+	public StingleDataSourceFactory(Context context, DataSource upstream, Crypto.Header header, int prefetchMemory, DecryptedChunkCache chunkCache, EncryptedFrameCache frameCache) {
 		this.context = context;
 		this.upstream = upstream;
 		this.header = header;
+		this.prefetchMemory = prefetchMemory;
+		this.chunkCache = chunkCache;
+		this.frameCache = frameCache;
 	}
 
 	@Override
 	public DataSource createDataSource() {
-		return new StingleDataSource(context, upstream, header);
+		return new StingleDataSource(context, upstream, header, prefetchMemory, chunkCache, frameCache);
 	}
 }
@@ -12,6 +12,8 @@ import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Predicate;
 import com.google.android.exoplayer2.util.Util;
 
+import org.stingle.photos.Net.HttpsClient;
+
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -22,12 +24,19 @@ import java.net.HttpURLConnection;
 import java.net.NoRouteToHostException;
 import java.net.ProtocolException;
 import java.net.URL;
+import java.security.GeneralSecurityException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javax.net.ssl.HttpsURLConnection;
+
 public class StingleHttpDataSource implements HttpDataSource {
 
 
@@ -39,12 +48,27 @@ public class StingleHttpDataSource implements HttpDataSource {
 	 * The default read timeout, in milliseconds.
 	 */
 	public static final int DEFAULT_READ_TIMEOUT_MILLIS = 8 * 1000;
+	/**
+	 * How far ahead of the previous response a new request may start to be served by skipping within that response
+	 * instead of reconnecting. Roughly what a mobile connection delivers in the time of a new TLS handshake.
+	 */
+	public static final long MAX_SKIP_AHEAD_BYTES = 512 * 1024;
+	/**
+	 * How long a closed response is kept open for a following request to the same URL.
+	 */
+	public static final long KEEP_ALIVE_MILLIS = 5 * 1000;
 
 	private static final String TAG = "DefaultHttpDataSource";
 	private static final int MAX_REDIRECTS = 20; // Same limit as okhttp.
 	private static final long MAX_BYTES_TO_DRAIN = 2048;
+	private static final long MAX_BYTES_TO_DRAIN_FOR_REUSE = 64 * 1024;
 	private static final Pattern CONTENT_RANGE_HEADER = Pattern.compile("^bytes (\\d+)-(\\d+)/(\\d+)$");
 	private static final AtomicReference<byte[]> skipBufferReference = new AtomicReference<>();
+	private static final ScheduledExecutorService idleCloser = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "StingleHttpIdleCloser");
+		thread.setDaemon(true);
+		return thread;
+	});
 
 	private final boolean allowCrossProtocolRedirects;
 	private final int connectTimeoutMillis;
@@ -55,8 +79,9 @@ public class StingleHttpDataSource implements HttpDataSource {
 	private final RequestProperties requestProperties;
 
 	private DataSpec dataSpec;
-	private HttpURLConnection connection;
-	private InputStream inputStream;
+	// Volatile since abort may be called from another thread, which only disconnects and never clears them
+	private volatile HttpURLConnection connection;
+	private volatile InputStream inputStream;
 	private boolean opened;
 
 	private long bytesToSkip;
@@ -65,6 +90,12 @@ public class StingleHttpDataSource implements HttpDataSource {
 	private long bytesSkipped;
 	private long bytesRead;
 
+	private long streamPosition;
+	private long responseEnd;
+	private boolean responseOpenEnded;
+	private volatile boolean reusable;
+	private ParkedResponse parked;
+
 	/**
 	 * @param userAgent            The User-Agent string that should be used.
 	 * @param contentTypePredicate An optional {@link Predicate}. If a content type is rejected by the
@@ -153,6 +184,10 @@ public class StingleHttpDataSource implements HttpDataSource {
 		this.dataSpec = dataSpec;
 		this.bytesRead = 0;
 		this.bytesSkipped = 0;
+		if (reuseParkedResponse(dataSpec)) {
+			opened = true;
+			return bytesToRead;
+		}
 		try {
 			connection = makeConnection(dataSpec);
 		} catch (IOException e) {
@@ -192,6 +227,10 @@ public class StingleHttpDataSource implements HttpDataSource {
 		// 206, then the server does not support partial requests. We'll need to manually skip to the
 		// requested position.
 		bytesToSkip = responseCode == 200 && dataSpec.position != 0 ? dataSpec.position : 0;
+		streamPosition = dataSpec.position - bytesToSkip;
+		responseOpenEnded = dataSpec.length == C.LENGTH_UNSET;
+		responseEnd = C.LENGTH_UNSET;
+		reusable = false;
 
 		// Determine the length of the data to be read, after skipping.
 		if (!dataSpec.isFlagSet(DataSpec.FLAG_ALLOW_GZIP)) {
@@ -202,6 +241,11 @@ public class StingleHttpDataSource implements HttpDataSource {
 				bytesToRead = contentLength != C.LENGTH_UNSET ? (contentLength - bytesToSkip)
 						: C.LENGTH_UNSET;
 			}
+			// Only plain GET responses can be continued by a following request
+			reusable = dataSpec.postBody == null;
+			if (bytesToRead != C.LENGTH_UNSET) {
+				responseEnd = dataSpec.position + bytesToRead;
+			}
 		} else {
 			// Gzip is enabled. If the server opts to use gzip then the content length in the response
 			// will be that of the compressed data, which isn't what we want. Furthermore, there isn't a
@@ -228,6 +272,7 @@ public class StingleHttpDataSource implements HttpDataSource {
 			skipInternal();
 			return readInternal(buffer, offset, readLength);
 		} catch (IOException e) {
+			reusable = false;
 			throw new HttpDataSourceException(e, dataSpec, HttpDataSourceException.TYPE_READ);
 		}
 	}
@@ -236,6 +281,11 @@ public class StingleHttpDataSource implements HttpDataSource {
 	public void close() throws HttpDataSourceException {
 		try {
 			if (inputStream != null) {
+				long position = streamPosition + bytesSkipped + bytesRead;
+				if (reusable && (responseEnd == C.LENGTH_UNSET || position < responseEnd)) {
+					parkResponse(position);
+					return;
+				}
 				maybeTerminateInputStream(connection, bytesRemaining());
 				try {
 					inputStream.close();
@@ -252,6 +302,143 @@ public class StingleHttpDataSource implements HttpDataSource {
 		}
 	}
 
+	/**
+	 * Breaks a read which is blocked on another thread. The response is disconnected and is not kept for
+	 * reuse, the blocked read fails with an IOException and the reading thread still has to call close.
+	 */
+	public void abort() {
+		reusable = false;
+		HttpURLConnection connection = this.connection;
+		if (connection != null) {
+			try {
+				connection.disconnect();
+			} catch (Exception e) {
+				Log.e(TAG, "Unexpected error while aborting", e);
+			}
+		}
+	}
+
+	/**
+	 * Keeps the open response after close, so the next request to the same URL can continue reading it.
+	 */
+	private synchronized void parkResponse(long position) {
+		ParkedResponse response = new ParkedResponse(connection, inputStream, dataSpec.uri.toString(),
+				position, responseEnd, responseOpenEnded);
+		connection = null;
+		inputStream = null;
+
+		if (parked != null) {
+			parked.closeQuietly();
+		}
+		parked = response;
+		response.closer = idleCloser.schedule(() -> {
+			synchronized (StingleHttpDataSource.this) {
+				if (parked != response) {
+					return;
+				}
+				parked = null;
+			}
+			response.closeQuietly();
+		}, KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	private synchronized ParkedResponse takeParkedResponse() {
+		ParkedResponse response = parked;
+		parked = null;
+		if (response != null) {
+			response.closer.cancel(false);
+		}
+		return response;
+	}
+
+	/**
+	 * Continues the response kept from the previous request if the new one starts at or shortly after
+	 * where it stopped and does not go past its end. The bytes in between are skipped.
+	 *
+	 * @return true if the kept response is used, otherwise it is closed
+	 */
+	private boolean reuseParkedResponse(DataSpec dataSpec) {
+		ParkedResponse response = takeParkedResponse();
+		if (response == null) {
+			return false;
+		}
+
+		long skip = dataSpec.position - response.position;
+		boolean fits;
+		if (dataSpec.length == C.LENGTH_UNSET) {
+			fits = response.openEnded;
+		} else {
+			fits = response.end == C.LENGTH_UNSET || dataSpec.position + dataSpec.length <= response.end;
+		}
+		if (!fits || skip < 0 || skip > MAX_SKIP_AHEAD_BYTES
+				|| (response.end != C.LENGTH_UNSET && dataSpec.position > response.end)
+				|| dataSpec.postBody != null || dataSpec.isFlagSet(DataSpec.FLAG_ALLOW_GZIP)
+				|| !response.uri.equals(dataSpec.uri.toString())) {
+			response.closeQuietly();
+			return false;
+		}
+
+		connection = response.connection;
+		inputStream = response.inputStream;
+		streamPosition = response.position;
+		responseEnd = response.end;
+		responseOpenEnded = response.openEnded;
+		reusable = true;
+		bytesToSkip = skip;
+		if (dataSpec.length != C.LENGTH_UNSET) {
+			bytesToRead = dataSpec.length;
+		} else {
+			bytesToRead = response.end == C.LENGTH_UNSET ? C.LENGTH_UNSET : response.end - dataSpec.position;
+		}
+		return true;
+	}
+
+	/**
+	 * An open response which was closed by the player but may still be continued.
+	 */
+	private static class ParkedResponse {
+		private final HttpURLConnection connection;
+		private final InputStream inputStream;
+		private final String uri;
+		private final long position;
+		private final long end;
+		private final boolean openEnded;
+		private ScheduledFuture<?> closer;
+
+		private ParkedResponse(HttpURLConnection connection, InputStream inputStream, String uri,
+							   long position, long end, boolean openEnded) {
+			this.connection = connection;
+			this.inputStream = inputStream;
+			this.uri = uri;
+			this.position = position;
+			this.end = end;
+			this.openEnded = openEnded;
+		}
+
+		/**
+		 * Closes the response. If only a little of it is left it is read to the end first,
+		 * which lets the connection go back to the pool instead of being dropped.
+		 */
+		private void closeQuietly() {
+			try {
+				if (end != C.LENGTH_UNSET && end - position <= MAX_BYTES_TO_DRAIN_FOR_REUSE) {
+					byte[] drainBuffer = new byte[4096];
+					while (inputStream.read(drainBuffer) != -1) {
+						// Drain
+					}
+				}
+				inputStream.close();
+			} catch (IOException e) {
+				// Closing anyway
+			}
+			try {
+				connection.disconnect();
+			} catch (Exception e) {
+				Log.e(TAG, "Unexpected error while disconnecting", e);
+			}
+		}
+	}
+
 	/**
 	 * Returns the current connection, or null if the source is not currently opened.
 	 *
@@ -350,6 +537,14 @@ public class StingleHttpDataSource implements HttpDataSource {
 	private HttpURLConnection makeConnection(URL url, byte[] postBody, long position,
 											 long length, boolean allowGzip, boolean followRedirects) throws IOException {
 		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		if (connection instanceof HttpsURLConnection) {
+			// Shared socket factory, so connections are pooled and TLS sessions resumed across requests
+			try {
+				HttpsClient.setupSSL((HttpsURLConnection) connection);
+			} catch (GeneralSecurityException e) {
+				throw new IOException(e);
+			}
+		}
 		connection.setConnectTimeout(connectTimeoutMillis);
 		connection.setReadTimeout(readTimeoutMillis);
 		if (defaultRequestProperties != null) {
@@ -482,6 +677,7 @@ public class StingleHttpDataSource implements HttpDataSource {
 			skipBuffer = new byte[4096];
 		}
 
+		InputStream inputStream = getInputStream();
 		while (bytesSkipped != bytesToSkip) {
 			int readLength = (int) Math.min(bytesToSkip - bytesSkipped, skipBuffer.length);
 			int read = inputStream.read(skipBuffer, 0, readLength);
@@ -489,6 +685,7 @@ public class StingleHttpDataSource implements HttpDataSource {
 				throw new InterruptedIOException();
 			}
 			if (read == -1) {
+				reusable = false;
 				throw new EOFException();
 			}
 			bytesSkipped += read;
@@ -524,6 +721,7 @@ public class StingleHttpDataSource implements HttpDataSource {
 			readLength = (int) Math.min(readLength, bytesRemaining);
 		}
 
+		InputStream inputStream = getInputStream();
 		int alreadyRead = 0;
 		int read = 0;
 		while(alreadyRead < readLength) {
@@ -542,6 +740,14 @@ public class StingleHttpDataSource implements HttpDataSource {
 		return alreadyRead;
 	}
 
+	private InputStream getInputStream() throws IOException {
+		InputStream inputStream = this.inputStream;
+		if (inputStream == null) {
+			throw new IOException("Source is closed");
+		}
+		return inputStream;
+	}
+
 	/**
 	 * On platform API levels 19 and 20, okhttp's implementation of {@link InputStream#close} can
 	 * block for a long time if the stream has a lot of data remaining. Call this method before
@@ -9,22 +9,18 @@ import android.widget.ImageView;
 
 import androidx.core.widget.ContentLoadingProgressBar;
 
-import org.stingle.photos.Auth.KeyManagement;
 import org.stingle.photos.Crypto.Crypto;
 import org.stingle.photos.Crypto.CryptoException;
 import org.stingle.photos.Crypto.CryptoHelpers;
-import org.stingle.photos.Net.HttpsClient;
-import org.stingle.photos.R;
-import org.stingle.photos.StinglePhotosApplication;
+import org.stingle.photos.Files.FileManager;
+import org.stingle.photos.Sync.SyncManager;
 import org.stingle.photos.Util.Helpers;
 import org.stingle.photos.Widget.AnimatedGifImageView;
 import org.stingle.photos.Widget.photoview.PhotoViewAttacher;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
-import java.util.Arrays;
-import java.util.HashMap;
 
 public class GetOriginalRemotePhotoTask extends AsyncTask<Void, Integer, byte[]> {
 
@@ -70,29 +66,35 @@ public class GetOriginalRemotePhotoTask extends AsyncTask<Void, Integer, byte[]>
 
 	@Override
 	protected byte[] doInBackground(Void... params) {
-		HashMap<String, String> postParams = new HashMap<String, String>();
-
-		postParams.put("token", KeyManagement.getApiToken(context));
-		postParams.put("file", result.filename);
-		postParams.put("thumb", "0");
-		postParams.put("set", String.valueOf(result.set));
+		// Downloaded into a file, so an interrupted download of a big original continues where it stopped next time
+		File cacheDir = FileManager.getOriginalCacheDir(context);
+		if(!cacheDir.exists() && !cacheDir.mkdirs()){
+			return null;
+		}
+		File encFile = new File(cacheDir, result.filename);
 
 		try {
-			byte[] encFile = HttpsClient.getFileAsByteArray(StinglePhotosApplication.getApiUrl() + context.getString(R.string.download_file_path), postParams);
-			if(encFile == null || encFile.length == 0){
+			if(!SyncManager.downloadFile(context, result.filename, encFile.getPath(), false, result.set)){
 				return null;
 			}
 
-			byte[] fileBeginning = Arrays.copyOfRange(encFile, 0, Crypto.FILE_BEGGINIG_LEN);
-			if (!new String(fileBeginning, "UTF-8").equals(Crypto.FILE_BEGGINING)) {
-				return null;
+			try (FileInputStream input = new FileInputStream(encFile)) {
+				byte[] fileBeginning = new byte[Crypto.FILE_BEGGINIG_LEN];
+				if (input.read(fileBeginning) != Crypto.FILE_BEGGINIG_LEN || !new String(fileBeginning, "UTF-8").equals(Crypto.FILE_BEGGINING)) {
+					return null;
+				}
 			}
 
-			return CryptoHelpers.decryptDbFile(context, result.set, result.albumId, result.headers, false, encFile);
+			try (FileInputStream input = new FileInputStream(encFile)) {
+				return CryptoHelpers.decryptDbFile(context, result.set, result.albumId, result.headers, false, input);
+			}
 		}
-		catch (NoSuchAlgorithmException | KeyManagementException | IOException | CryptoException e) {
+		catch (IOException | CryptoException e) {
 
 		}
+		finally {
+			encFile.delete();
+		}
 
 		return null;
 	}
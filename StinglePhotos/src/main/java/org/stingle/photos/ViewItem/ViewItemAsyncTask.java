@@ -36,9 +36,8 @@ import org.stingle.photos.Auth.KeyManagement;
 import org.stingle.photos.Crypto.Crypto;
 import org.stingle.photos.Crypto.CryptoException;
 import org.stingle.photos.Crypto.CryptoHelpers;
-import org.stingle.photos.Db.Objects.StingleDbAlbum;
+import org.stingle.photos.Crypto.DecryptingFileChannel;
 import org.stingle.photos.Db.Objects.StingleDbFile;
-import org.stingle.photos.Db.Query.AlbumsDb;
 import org.stingle.photos.Db.Query.FilesDb;
 import org.stingle.photos.Db.StingleDb;
 import org.stingle.photos.Files.FileManager;
@@ -47,8 +46,13 @@ import org.stingle.photos.Net.StingleResponse;
 import org.stingle.photos.R;
 import org.stingle.photos.StinglePhotosApplication;
 import org.stingle.photos.Sync.SyncManager;
+import org.stingle.photos.Sync.SyncSteps.DownloadQueue;
 import org.stingle.photos.Util.Helpers;
 import org.stingle.photos.Util.MemoryCache;
+import org.stingle.photos.Video.DecryptedChunkCache;
+import org.stingle.photos.Video.EncryptedFrameCache;
+import org.stingle.photos.Video.PreviewStrip;
+import org.stingle.photos.Video.SeekPreviewView;
 import org.stingle.photos.Video.StingleDataSourceFactory;
 import org.stingle.photos.Video.StingleHttpDataSource;
 import org.stingle.photos.ViewItemActivity;
@@ -125,7 +129,13 @@ public class ViewItemAsyncTask extends AsyncTask<Void, Integer, ViewItemAsyncTas
 		result.filename = dbFile.filename;
 		result.headers = dbFile.headers;
 		try {
-			if (dbFile.isLocal) {
+			boolean isLocal = dbFile.isLocal;
+			if (isLocal && dbFile.isRemote && DownloadQueue.isQueued(context, dbFile.filename, set, false)) {
+				// The local copy is an older version than the headers, the new one is shown from the server
+				// until the download queue replaces it
+				isLocal = false;
+			}
+			if (isLocal) {
 				File file = new File(FileManager.getHomeDir(context) + "/" + dbFile.filename);
 
 				Crypto.Header fileHeader = CryptoHelpers.decryptFileHeaders(context, set, albumId, dbFile.headers, false);
@@ -137,15 +147,18 @@ public class ViewItemAsyncTask extends AsyncTask<Void, Integer, ViewItemAsyncTas
 				}
 
 				if (fileType == Crypto.FILE_TYPE_PHOTO) {
-					FileInputStream input = new FileInputStream(file);
+					if (isGif) {
+						FileInputStream input = new FileInputStream(file);
 
-					byte[] decryptedData = CryptoHelpers.decryptDbFile(context, set, albumId, dbFile.headers, false, input);
+						byte[] decryptedData = CryptoHelpers.decryptDbFile(context, set, albumId, dbFile.headers, false, input);
 
-					if (decryptedData.length > 0) {
-						if (isGif) {
+						if (decryptedData.length > 0) {
 							result.bitmapBytes = decryptedData;
-						} else {
-							result.bitmap = Helpers.decodeBitmap(decryptedData, getSize(context));
+						}
+					} else if (fileHeader.dataSize > 0) {
+						// Decoded from the file chunk by chunk instead of decrypting the whole photo into memory
+						try (DecryptingFileChannel channel = new DecryptingFileChannel(crypto, file, fileHeader)) {
+							result.bitmap = Helpers.decodeBitmap(channel, getSize(context));
 						}
 					}
 				}
@@ -191,14 +204,13 @@ public class ViewItemAsyncTask extends AsyncTask<Void, Integer, ViewItemAsyncTas
 			}
 			if (fileType == Crypto.FILE_TYPE_VIDEO) {
 				if (set == SyncManager.ALBUM) {
-					AlbumsDb albumsDb = new AlbumsDb(context);
-					StingleDbAlbum dbAlbum = albumsDb.getAlbumById(albumId);
-					Crypto.AlbumData albumData = StinglePhotosApplication.getCrypto().parseAlbumData(dbAlbum.publicKey, dbAlbum.encPrivateKey, dbAlbum.metadata);
+					Crypto.AlbumData albumData = StinglePhotosApplication.getAlbumKeyring().get(context, albumId);
 					this.videoFileHeader = crypto.getFileHeaderFromHeadersStr(dbFile.headers, albumData.privateKey, albumData.publicKey);
 
 				} else {
 					this.videoFileHeader = crypto.getFileHeaderFromHeadersStr(dbFile.headers);
 				}
+				result.previewStrip = PreviewStrip.load(context, dbFile.filename);
 			}
 		} catch (IOException | CryptoException e) {
 			e.printStackTrace();
@@ -313,11 +325,15 @@ public class ViewItemAsyncTask extends AsyncTask<Void, Integer, ViewItemAsyncTas
 			SimpleExoPlayer player = ExoPlayerFactory.newSimpleInstance(
 					new DefaultRenderersFactory(context),
 					new DefaultTrackSelector(), new DefaultLoadControl());
-			adapter.addPlayer(position, player);
+			DecryptedChunkCache chunkCache = new DecryptedChunkCache();
+			adapter.addPlayer(position, player, chunkCache);
 
 
 			playerView.setPlayer(player);
 			player.addListener(getPlayerEventListener());
+			if (result.previewStrip != null) {
+				SeekPreviewView.attach(playerView, player, result.previewStrip);
+			}
 
 			MediaSource mediaSource = null;
 			if (result.isRemote) {
@@ -326,14 +342,14 @@ public class ViewItemAsyncTask extends AsyncTask<Void, Integer, ViewItemAsyncTas
 					Log.d("url", result.url);
 
 					StingleHttpDataSource http = new StingleHttpDataSource("stingle", null);
-					StingleDataSourceFactory stingle = new StingleDataSourceFactory(context, http, videoFileHeader);
+					StingleDataSourceFactory stingle = new StingleDataSourceFactory(context, http, videoFileHeader, chunkCache, EncryptedFrameCache.getInstance(context));
 
 					mediaSource = new ExtractorMediaSource.Factory(stingle).createMediaSource(uri);
 				}
 			} else {
 				Uri uri = Uri.fromFile(new File(FileManager.getHomeDir(context) + "/" + result.filename));
 				FileDataSource file = new FileDataSource();
-				StingleDataSourceFactory stingle = new StingleDataSourceFactory(context, file, videoFileHeader);
+				StingleDataSourceFactory stingle = new StingleDataSourceFactory(context, file, videoFileHeader, chunkCache);
 				mediaSource = new ExtractorMediaSource.Factory(stingle).createMediaSource(uri);
 			}
 
@@ -438,5 +454,6 @@ public class ViewItemAsyncTask extends AsyncTask<Void, Integer, ViewItemAsyncTas
 		public int set = SyncManager.GALLERY;
 		public String albumId = null;
 		public String headers = null;
+		public PreviewStrip previewStrip = null;
 	}
 }
@@ -18,6 +18,7 @@ import org.stingle.photos.Db.Query.FilesDb;
 import org.stingle.photos.Db.Query.GalleryTrashDb;
 import org.stingle.photos.R;
 import org.stingle.photos.Sync.SyncManager;
+import org.stingle.photos.Video.DecryptedChunkCache;
 import org.stingle.photos.Widget.ImageHolderLayout;
 
 import java.util.HashMap;
@@ -32,6 +33,7 @@ public class ViewPagerAdapter extends PagerAdapter {
 	private int set = SyncManager.GALLERY;
 	private String albumId = null;
 	private HashMap<Integer, SimpleExoPlayer> players = new HashMap<Integer, SimpleExoPlayer>();
+	private HashMap<Integer, DecryptedChunkCache> chunkCaches = new HashMap<Integer, DecryptedChunkCache>();
 	private View.OnTouchListener gestureTouchListener;
 	private View.OnClickListener onSingleClickListener;
 
@@ -98,6 +100,10 @@ public class ViewPagerAdapter extends PagerAdapter {
 			}
 			players.remove(position);
 		}
+		DecryptedChunkCache chunkCache = chunkCaches.remove(position);
+		if (chunkCache != null) {
+			chunkCache.clear();
+		}
 	}
 
 	@Override
@@ -105,9 +111,15 @@ public class ViewPagerAdapter extends PagerAdapter {
 		return POSITION_NONE;
 	}
 
-	public void addPlayer(int position, SimpleExoPlayer player) {
+	/**
+	 * @param chunkCache decrypted chunks of the video, cleared together with the player
+	 */
+	public void addPlayer(int position, SimpleExoPlayer player, DecryptedChunkCache chunkCache) {
 		synchronized (this) {
 			players.put(position, player);
+			if (chunkCache != null) {
+				chunkCaches.put(position, chunkCache);
+			}
 		}
 	}
 
@@ -117,6 +129,10 @@ public class ViewPagerAdapter extends PagerAdapter {
 				players.get(pos).release();
 			}
 			players.clear();
+			for (DecryptedChunkCache chunkCache : chunkCaches.values()) {
+				chunkCache.clear();
+			}
+			chunkCaches.clear();
 		}
 	}
 
@@ -0,0 +1,52 @@
+package org.stingle.photos.Crypto;
+
+import com.goterl.lazycode.lazysodium.interfaces.Box;
+import com.goterl.lazycode.lazysodium.interfaces.KeyDerivation;
+
+import org.stingle.photos.StinglePhotosApplication;
+
+import java.util.HashMap;
+
+/**
+ * Crypto which keeps its private files in memory, so it can run without an Android context.
+ */
+public class BenchmarkCrypto extends Crypto {
+
+	private final HashMap<String, byte[]> files = new HashMap<>();
+
+	public final byte[] publicKey = new byte[Box.PUBLICKEYBYTES];
+	public final byte[] privateKey = new byte[Box.SECRETKEYBYTES];
+
+	public BenchmarkCrypto(int chunkSize, boolean parallelChunks){
+		super(null);
+		bufSize = chunkSize;
+		setParallelChunks(parallelChunks);
+
+		so.crypto_box_keypair(publicKey, privateKey);
+		savePrivateFile(PUBLIC_KEY_FILENAME, publicKey);
+		StinglePhotosApplication.setKey(privateKey);
+	}
+
+	public Header newHeader(long dataSize) throws CryptoException {
+		byte[] symmetricKey = new byte[KeyDerivation.MASTER_KEY_BYTES];
+		so.crypto_kdf_keygen(symmetricKey);
+
+		return getNewHeader(symmetricKey, dataSize, "IMG_20200101_120000.jpg", FILE_TYPE_PHOTO, getNewFileId(), 0);
+	}
+
+	@Override
+	protected boolean savePrivateFile(String filename, byte[] data){
+		files.put(filename, data);
+		return true;
+	}
+
+	@Override
+	protected byte[] readPrivateFile(String filename){
+		return files.get(filename);
+	}
+
+	@Override
+	protected boolean deletePrivateFile(String filename){
+		return files.remove(filename) != null;
+	}
+}
@@ -0,0 +1,97 @@
+package org.stingle.photos.Crypto;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of chunk encryption and decryption for several chunk and file sizes.
+ *
+ * The primary score is files per second, the megabytes counter gives MB/s
+ * and the gc profiler configured in build.gradle adds the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DataBenchmark {
+
+	private static final double MB = 1024 * 1024;
+
+	@Param({"65536", "262144", "1048576"})
+	public int chunkSize;
+
+	@Param({"262144", "4194304", "33554432"})
+	public int fileSize;
+
+	@Param({"false", "true"})
+	public boolean parallel;
+
+	private BenchmarkCrypto crypto;
+	private Crypto.Header header;
+	private byte[] plain;
+	private byte[] encrypted;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Counters {
+		public double megabytes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			megabytes = 0;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		crypto = new BenchmarkCrypto(chunkSize, parallel);
+		header = crypto.newHeader(fileSize);
+
+		plain = new byte[fileSize];
+		new Random(fileSize).nextBytes(plain);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(fileSize + fileSize / 16 + 1024);
+		crypto.encryptData(new ByteArrayInputStream(plain), out, header);
+		encrypted = out.toByteArray();
+	}
+
+	@Benchmark
+	public boolean encryptData(Counters counters) throws Exception {
+		boolean result = crypto.encryptData(new ByteArrayInputStream(plain), new NullOutputStream(), header);
+		counters.megabytes += fileSize / MB;
+		return result;
+	}
+
+	@Benchmark
+	public boolean decryptData(Counters counters) throws Exception {
+		boolean result = crypto.decryptData(new ByteArrayInputStream(encrypted), new NullOutputStream(), header);
+		counters.megabytes += fileSize / MB;
+		return result;
+	}
+
+	/**
+	 * Discards the output, so only the crypto work is measured.
+	 */
+	private static class NullOutputStream extends OutputStream {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	}
+}
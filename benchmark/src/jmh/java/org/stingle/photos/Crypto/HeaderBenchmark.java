@@ -0,0 +1,65 @@
+package org.stingle.photos.Crypto;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Operations per second of the header and album key handling done for every gallery item.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class HeaderBenchmark {
+
+	private BenchmarkCrypto crypto;
+	private byte[] fileHeader;
+	private String headersStr;
+	private Crypto.AlbumEncData albumEncData;
+	private byte[] albumPublicKey;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		crypto = new BenchmarkCrypto(1024 * 1024, false);
+
+		ByteArrayOutputStream fileOut = new ByteArrayOutputStream();
+		crypto.writeHeader(fileOut, crypto.newHeader(1024 * 1024 * 3), crypto.publicKey);
+		fileHeader = fileOut.toByteArray();
+
+		ByteArrayOutputStream thumbOut = new ByteArrayOutputStream();
+		crypto.writeHeader(thumbOut, crypto.newHeader(1024 * 40), crypto.publicKey);
+		headersStr = Crypto.assembleHeadersString(fileHeader, thumbOut.toByteArray());
+
+		albumEncData = crypto.generateEncryptedAlbumData(crypto.publicKey, new Crypto.AlbumMetadata("Summer 2020"));
+		albumPublicKey = Crypto.base64ToByteArray(albumEncData.publicKey);
+	}
+
+	@Benchmark
+	public Crypto.Header getFileHeader() throws Exception {
+		return crypto.getFileHeader(new ByteArrayInputStream(fileHeader), crypto.privateKey, crypto.publicKey);
+	}
+
+	@Benchmark
+	public int getOverallHeaderSize() throws Exception {
+		return Crypto.getOverallHeaderSize(new ByteArrayInputStream(fileHeader), false);
+	}
+
+	@Benchmark
+	public String reencryptFileHeaders() throws Exception {
+		return crypto.reencryptFileHeaders(headersStr, albumPublicKey, crypto.privateKey, crypto.publicKey);
+	}
+
+	@Benchmark
+	public Crypto.AlbumData parseAlbumData() throws Exception {
+		return crypto.parseAlbumData(albumEncData.publicKey, albumEncData.encPrivateKey, albumEncData.metadata);
+	}
+}
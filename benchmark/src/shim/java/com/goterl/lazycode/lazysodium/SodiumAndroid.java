@@ -0,0 +1,12 @@
+package com.goterl.lazycode.lazysodium;
+
+/**
+ * Desktop JVM stand-in for the Android binding.
+ * Both bind the same native functions, this one loads the libsodium bundled with lazysodium-java.
+ */
+public class SodiumAndroid extends SodiumJava {
+
+	public SodiumAndroid() {
+		super();
+	}
+}
@@ -0,0 +1,17 @@
+package org.stingle.photos;
+
+/**
+ * Desktop JVM stand-in for the application class, only keeps the unlocked private key.
+ */
+public class StinglePhotosApplication {
+
+	private static byte[] key = null;
+
+	public static byte[] getKey(){
+		return key;
+	}
+
+	public static void setKey(byte[] pKey){
+		key = pKey;
+	}
+}
@@ -0,0 +1,120 @@
+package org.stingle.photos.Crypto;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Reads at random positions and lengths have to give the same bytes as the plaintext.
+ */
+public class DecryptingFileChannelTest {
+
+	// Not a power of two, so chunk boundaries don't line up with the read sizes
+	private static final int CHUNK_SIZE = 1000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private BenchmarkCrypto crypto;
+
+	@Before
+	public void setUp() {
+		crypto = new BenchmarkCrypto(CHUNK_SIZE, false);
+	}
+
+	@Test
+	public void randomReads() throws Exception {
+		for (int dataSize : new int[]{1, CHUNK_SIZE - 1, CHUNK_SIZE, CHUNK_SIZE * 4, CHUNK_SIZE * 10 + 123}) {
+			byte[] plain = getPlain(dataSize);
+			Random random = new Random(dataSize);
+
+			try (DecryptingFileChannel channel = new DecryptingFileChannel(crypto, encrypt(plain))) {
+				assertEquals(dataSize, channel.size());
+
+				for (int i = 0; i < 500; i++) {
+					int position = random.nextInt(dataSize);
+					int length = random.nextInt(CHUNK_SIZE * 3);
+					assertRead(channel, plain, position, length);
+				}
+
+				// Around chunk boundaries and the end of the data
+				for (int boundary = CHUNK_SIZE; boundary < dataSize; boundary += CHUNK_SIZE) {
+					assertRead(channel, plain, boundary - 1, 2);
+					assertRead(channel, plain, boundary, CHUNK_SIZE);
+				}
+				assertRead(channel, plain, dataSize - 1, CHUNK_SIZE);
+				assertEquals(-1, channel.read(dataSize, new byte[10], 0, 10));
+			}
+		}
+	}
+
+	@Test
+	public void sequentialReads() throws Exception {
+		byte[] plain = getPlain(CHUNK_SIZE * 7 + 5);
+
+		try (DecryptingFileChannel channel = new DecryptingFileChannel(crypto, encrypt(plain))) {
+			// Offset from the beginning of the file, the stream is read from the channel position
+			channel.position(CHUNK_SIZE + 3);
+			assertArrayEquals(Arrays.copyOfRange(plain, CHUNK_SIZE + 3, plain.length), readAll(Channels.newInputStream(channel)));
+
+			channel.position(0);
+			assertArrayEquals(plain, readAll(Channels.newInputStream(channel)));
+			assertEquals(plain.length, channel.position());
+		}
+	}
+
+	@Test
+	public void emptyFile() throws Exception {
+		try (DecryptingFileChannel channel = new DecryptingFileChannel(crypto, encrypt(new byte[0]))) {
+			assertEquals(0, channel.size());
+			assertEquals(-1, channel.read(0, new byte[10], 0, 10));
+		}
+	}
+
+	private File encrypt(byte[] plain) throws Exception {
+		File file = folder.newFile();
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			crypto.encryptFile(new ByteArrayInputStream(plain), out, "test.jpg", Crypto.FILE_TYPE_PHOTO, plain.length, 0);
+		}
+		return file;
+	}
+
+	private static void assertRead(DecryptingFileChannel channel, byte[] plain, int position, int length) throws Exception {
+		byte[] buffer = new byte[length + 2];
+		int bytesRead = channel.read(position, buffer, 1, length);
+
+		int expectedLength = Math.min(length, plain.length - position);
+		String message = "read of " + length + " at " + position + " from " + plain.length;
+		assertEquals(message, expectedLength, bytesRead);
+		assertArrayEquals(message, Arrays.copyOfRange(plain, position, position + expectedLength), Arrays.copyOfRange(buffer, 1, 1 + bytesRead));
+	}
+
+	private static byte[] readAll(InputStream in) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[777];
+		int numRead;
+		while ((numRead = in.read(buf)) != -1) {
+			out.write(buf, 0, numRead);
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] getPlain(int dataSize) {
+		byte[] plain = new byte[dataSize];
+		new Random(dataSize).nextBytes(plain);
+		return plain;
+	}
+}
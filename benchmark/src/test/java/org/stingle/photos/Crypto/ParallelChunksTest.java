@@ -0,0 +1,158 @@
+package org.stingle.photos.Crypto;
+
+import com.goterl.lazycode.lazysodium.SodiumAndroid;
+import com.goterl.lazycode.lazysodium.interfaces.AEAD;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Parallel chunks have to give the same files as the sequential code.
+ *
+ * The parallel methods are called directly, Crypto only picks them on multi-core machines.
+ */
+public class ParallelChunksTest {
+
+	// Not used by other tests, pooled codecs are only reused for the same chunk size and keep their SodiumAndroid
+	private static final int CHUNK_SIZE = 4096;
+	private static final int FRAME_OVERHEAD = AEAD.XCHACHA20POLY1305_IETF_NPUBBYTES + AEAD.XCHACHA20POLY1305_IETF_ABYTES;
+
+	private static final int[] DATA_SIZES = {
+			0,
+			1,
+			CHUNK_SIZE - 1,
+			CHUNK_SIZE,
+			CHUNK_SIZE + 1,
+			CHUNK_SIZE * 3,
+			// More chunks than the pipeline window holds
+			CHUNK_SIZE * 300,
+			CHUNK_SIZE * 300 + 17
+	};
+
+	private static final ReplayingSodium sodium = new ReplayingSodium();
+
+	private BenchmarkCrypto crypto;
+
+	@Before
+	public void setUp() {
+		crypto = new BenchmarkCrypto(CHUNK_SIZE, false);
+		crypto.so = sodium;
+	}
+
+	@Test
+	public void parallelEncryptionGivesSameCiphertext() throws Exception {
+		for (int dataSize : DATA_SIZES) {
+			byte[] plain = getPlain(dataSize);
+			Crypto.Header header = crypto.newHeader(dataSize);
+
+			byte[] parallel = encryptParallel(plain, header);
+			assertEquals("length for " + dataSize, dataSize + getChunkCount(dataSize) * FRAME_OVERHEAD, parallel.length);
+
+			// Random nonces are replayed in chunk order, everything else has to match as it is
+			sodium.replay(getNonces(parallel, dataSize));
+			byte[] sequential = encryptSequential(plain, header);
+			assertTrue("all nonces used for " + dataSize, sodium.isDrained());
+
+			assertArrayEquals("ciphertext for " + dataSize, sequential, parallel);
+		}
+	}
+
+	@Test
+	public void roundTrips() throws Exception {
+		for (int dataSize : DATA_SIZES) {
+			byte[] plain = getPlain(dataSize);
+			Crypto.Header header = crypto.newHeader(dataSize);
+
+			byte[] parallel = encryptParallel(plain, header);
+			byte[] sequential = encryptSequential(plain, header);
+
+			assertArrayEquals("parallel to parallel for " + dataSize, plain, decryptParallel(parallel, header));
+			assertArrayEquals("parallel to sequential for " + dataSize, plain, decryptSequential(parallel, header));
+			assertArrayEquals("sequential to parallel for " + dataSize, plain, decryptParallel(sequential, header));
+			assertArrayEquals("sequential to sequential for " + dataSize, plain, decryptSequential(sequential, header));
+		}
+	}
+
+	private byte[] encryptParallel(byte[] plain, Crypto.Header header) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		crypto.encryptDataParallel(new ByteArrayInputStream(plain), out, header, null, null);
+		return out.toByteArray();
+	}
+
+	private byte[] encryptSequential(byte[] plain, Crypto.Header header) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		crypto.encryptData(new ByteArrayInputStream(plain), out, header);
+		return out.toByteArray();
+	}
+
+	private byte[] decryptParallel(byte[] encrypted, Crypto.Header header) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		crypto.decryptDataParallel(new ByteArrayInputStream(encrypted), out, header, null, null);
+		return out.toByteArray();
+	}
+
+	private byte[] decryptSequential(byte[] encrypted, Crypto.Header header) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		crypto.decryptData(new ByteArrayInputStream(encrypted), out, header);
+		return out.toByteArray();
+	}
+
+	private static byte[] getPlain(int dataSize) {
+		byte[] plain = new byte[dataSize];
+		new Random(dataSize).nextBytes(plain);
+		return plain;
+	}
+
+	private static int getChunkCount(int dataSize) {
+		return (dataSize + CHUNK_SIZE - 1) / CHUNK_SIZE;
+	}
+
+	private static List<byte[]> getNonces(byte[] encrypted, int dataSize) {
+		List<byte[]> nonces = new ArrayList<>();
+		int offset = 0;
+		for (int i = 0; i < getChunkCount(dataSize); i++) {
+			nonces.add(Arrays.copyOfRange(encrypted, offset, offset + AEAD.XCHACHA20POLY1305_IETF_NPUBBYTES));
+			offset += Math.min(CHUNK_SIZE, dataSize - i * CHUNK_SIZE) + FRAME_OVERHEAD;
+		}
+		return nonces;
+	}
+
+	/**
+	 * Gives out recorded nonces instead of random bytes, until they run out.
+	 */
+	private static class ReplayingSodium extends SodiumAndroid {
+		private final ArrayDeque<byte[]> nonces = new ArrayDeque<>();
+
+		private synchronized void replay(List<byte[]> recorded) {
+			nonces.clear();
+			nonces.addAll(recorded);
+		}
+
+		private synchronized boolean isDrained() {
+			return nonces.isEmpty();
+		}
+
+		@Override
+		public synchronized void randombytes_buf(byte[] buffer, int size) {
+			byte[] nonce = nonces.poll();
+			if (nonce == null) {
+				super.randombytes_buf(buffer, size);
+				return;
+			}
+			assertEquals(size, nonce.length);
+			System.arraycopy(nonce, 0, buffer, 0, size);
+		}
+	}
+}
@@ -0,0 +1,359 @@
+package org.stingle.devserver;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+
+/**
+ * Stand-in for the upload endpoints of the API server, so uploads in parts can be tried against a local machine.
+ *
+ * Uploaded files are stored in plain directories, the token is not checked.
+ * With a fail rate some parts are stored only halfway and answered with an error, like a dropped connection.
+ */
+public class DevServer {
+
+	private static final long SPACE_QUOTA_MB = 1024;
+
+	private final File filesDir;
+	private final File thumbsDir;
+	private final File uploadsDir;
+	private final double failRate;
+	private final Random random = new Random();
+
+	public DevServer(File dir, double failRate){
+		this.filesDir = new File(dir, "files");
+		this.thumbsDir = new File(dir, "thumbs");
+		this.uploadsDir = new File(dir, "uploads");
+		this.failRate = failRate;
+		filesDir.mkdirs();
+		thumbsDir.mkdirs();
+		uploadsDir.mkdirs();
+	}
+
+	public static void main(String[] args) throws Exception {
+		int port = 8443;
+		File dir = new File("devserver-data");
+		String keystore = null;
+		String password = "";
+		double failRate = 0;
+
+		for(int i = 0; i + 1 < args.length; i += 2){
+			switch (args[i]) {
+				case "--port":
+					port = Integer.parseInt(args[i + 1]);
+					break;
+				case "--dir":
+					dir = new File(args[i + 1]);
+					break;
+				case "--keystore":
+					keystore = args[i + 1];
+					break;
+				case "--password":
+					password = args[i + 1];
+					break;
+				case "--fail-rate":
+					failRate = Double.parseDouble(args[i + 1]);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+
+		HttpServer server;
+		if(keystore != null){
+			KeyStore keyStore = KeyStore.getInstance("PKCS12");
+			try (InputStream in = new FileInputStream(keystore)) {
+				keyStore.load(in, password.toCharArray());
+			}
+			KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+			keyManagerFactory.init(keyStore, password.toCharArray());
+			SSLContext sslContext = SSLContext.getInstance("TLS");
+			sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
+
+			HttpsServer httpsServer = HttpsServer.create(new InetSocketAddress(port), 0);
+			httpsServer.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+			server = httpsServer;
+		}
+		else {
+			server = HttpServer.create(new InetSocketAddress(port), 0);
+		}
+
+		new DevServer(dir, failRate).register(server);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+		System.out.println("Listening on " + (keystore != null ? "https" : "http") + "://0.0.0.0:" + port + "/, storing into " + dir.getAbsolutePath());
+	}
+
+	public void register(HttpServer server){
+		server.createContext("/sync/upload", wrap(this::upload));
+		server.createContext("/sync/uploadStart", wrap(this::uploadStart));
+		server.createContext("/sync/uploadPart", wrap(this::uploadPart));
+		server.createContext("/sync/uploadFinish", wrap(this::uploadFinish));
+	}
+
+	private interface Endpoint {
+		String handle(HttpExchange exchange, byte[] body) throws IOException;
+	}
+
+	private HttpHandler wrap(Endpoint endpoint){
+		return exchange -> {
+			try {
+				byte[] body = readAll(exchange.getRequestBody());
+				String response;
+				try {
+					response = endpoint.handle(exchange, body);
+				}
+				catch (IllegalArgumentException | IllegalStateException e) {
+					response = error(e.getMessage());
+				}
+				if(response == null){
+					exchange.sendResponseHeaders(503, -1);
+					return;
+				}
+				byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type", "application/json");
+				exchange.sendResponseHeaders(200, bytes.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(bytes);
+				}
+				System.out.println(exchange.getRequestURI() + " -> " + response);
+			}
+			catch (IOException | RuntimeException e) {
+				e.printStackTrace();
+				exchange.sendResponseHeaders(500, -1);
+			}
+			finally {
+				exchange.close();
+			}
+		};
+	}
+
+	/**
+	 * The old single request upload with the whole file and the thumbnail
+	 */
+	private String upload(HttpExchange exchange, byte[] body) throws IOException {
+		Multipart request = new Multipart(exchange.getRequestHeaders().getFirst("Content-Type"), body);
+		byte[] file = request.files.get("file");
+		byte[] thumb = request.files.get("thumb");
+		if(file == null || thumb == null){
+			throw new IllegalArgumentException("File or thumb is missing");
+		}
+		String filename = checkFilename(request.filenames.get("file"));
+		write(new File(filesDir, filename), file);
+		write(new File(thumbsDir, filename), thumb);
+		return ok(getSpaceParts());
+	}
+
+	/**
+	 * Opens an upload session or continues the given one, answers with the number of bytes already received
+	 */
+	private String uploadStart(HttpExchange exchange, byte[] body) throws IOException {
+		HashMap<String, String> params = parseForm(body);
+		String filename = checkFilename(params.get("file"));
+		long fileSize = Long.parseLong(params.get("fileSize"));
+
+		String uploadId = params.get("uploadId");
+		Properties meta = (uploadId != null && uploadId.matches("[0-9a-f]+") ? readMeta(uploadId) : null);
+		if(meta == null || !filename.equals(meta.getProperty("file")) || fileSize != Long.parseLong(meta.getProperty("fileSize"))){
+			uploadId = UUID.randomUUID().toString().replace("-", "");
+			File sessionDir = new File(uploadsDir, uploadId);
+			if(!sessionDir.mkdirs()){
+				throw new IOException("Can't create " + sessionDir);
+			}
+			meta = new Properties();
+			for(Map.Entry<String, String> param : params.entrySet()){
+				if(!param.getKey().equals("token") && !param.getKey().equals("uploadId")){
+					meta.setProperty(param.getKey(), param.getValue());
+				}
+			}
+			try (OutputStream out = new FileOutputStream(new File(sessionDir, "meta.properties"))) {
+				meta.store(out, null);
+			}
+		}
+
+		LinkedHashMap<String, String> parts = new LinkedHashMap<>();
+		parts.put("uploadId", uploadId);
+		parts.put("offset", String.valueOf(getDataFile(uploadId).length()));
+		return ok(parts);
+	}
+
+	/**
+	 * Appends a part if it starts where the received data ends, always answers with the new end
+	 */
+	private String uploadPart(HttpExchange exchange, byte[] body) throws IOException {
+		Multipart request = new Multipart(exchange.getRequestHeaders().getFirst("Content-Type"), body);
+		String uploadId = request.params.get("uploadId");
+		Properties meta = (uploadId != null && uploadId.matches("[0-9a-f]+") ? readMeta(uploadId) : null);
+		byte[] part = request.files.get("part");
+		if(meta == null || part == null){
+			throw new IllegalArgumentException("Unknown upload or missing part");
+		}
+
+		long offset = Long.parseLong(request.params.get("offset"));
+		long fileSize = Long.parseLong(meta.getProperty("fileSize"));
+		File dataFile = getDataFile(uploadId);
+
+		synchronized (this) {
+			long received = dataFile.length();
+			if(offset == received){
+				if(offset + part.length > fileSize){
+					throw new IllegalArgumentException("Part goes past the end of the file");
+				}
+				boolean fail = random.nextDouble() < failRate;
+				try (RandomAccessFile out = new RandomAccessFile(dataFile, "rw")) {
+					out.seek(offset);
+					out.write(part, 0, (fail ? part.length / 2 : part.length));
+				}
+				if(fail){
+					return null;
+				}
+			}
+		}
+
+		LinkedHashMap<String, String> parts = new LinkedHashMap<>();
+		parts.put("offset", String.valueOf(dataFile.length()));
+		return ok(parts);
+	}
+
+	/**
+	 * Stores the received file together with the thumbnail when all data is there
+	 */
+	private String uploadFinish(HttpExchange exchange, byte[] body) throws IOException {
+		Multipart request = new Multipart(exchange.getRequestHeaders().getFirst("Content-Type"), body);
+		String uploadId = request.params.get("uploadId");
+		Properties meta = (uploadId != null && uploadId.matches("[0-9a-f]+") ? readMeta(uploadId) : null);
+		byte[] thumb = request.files.get("thumb");
+		if(meta == null || thumb == null){
+			throw new IllegalArgumentException("Unknown upload or missing thumb");
+		}
+
+		File dataFile = getDataFile(uploadId);
+		if(dataFile.length() != Long.parseLong(meta.getProperty("fileSize"))){
+			throw new IllegalStateException("Upload is not complete");
+		}
+
+		String filename = checkFilename(meta.getProperty("file"));
+		File file = new File(filesDir, filename);
+		file.delete();
+		if(!dataFile.renameTo(file)){
+			throw new IOException("Can't move " + dataFile + " to " + file);
+		}
+		write(new File(thumbsDir, filename), thumb);
+
+		File sessionDir = new File(uploadsDir, uploadId);
+		new File(sessionDir, "meta.properties").delete();
+		sessionDir.delete();
+
+		return ok(getSpaceParts());
+	}
+
+	private File getDataFile(String uploadId){
+		return new File(new File(uploadsDir, uploadId), "data");
+	}
+
+	private Properties readMeta(String uploadId) throws IOException {
+		File metaFile = new File(new File(uploadsDir, uploadId), "meta.properties");
+		if(!metaFile.exists()){
+			return null;
+		}
+		Properties meta = new Properties();
+		try (InputStream in = new FileInputStream(metaFile)) {
+			meta.load(in);
+		}
+		return meta;
+	}
+
+	private LinkedHashMap<String, String> getSpaceParts(){
+		long used = 0;
+		File[] files = filesDir.listFiles();
+		if(files != null){
+			for(File file : files){
+				used += file.length();
+			}
+		}
+		LinkedHashMap<String, String> parts = new LinkedHashMap<>();
+		parts.put("spaceUsed", String.valueOf(used / (1024 * 1024)));
+		parts.put("spaceQuota", String.valueOf(SPACE_QUOTA_MB));
+		return parts;
+	}
+
+	private static String checkFilename(String filename){
+		if(filename == null || filename.length() == 0 || filename.contains("/") || filename.contains("\\") || filename.startsWith(".")){
+			throw new IllegalArgumentException("Invalid filename");
+		}
+		return filename;
+	}
+
+	private static void write(File file, byte[] data) throws IOException {
+		try (OutputStream out = new FileOutputStream(file)) {
+			out.write(data);
+		}
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[64 * 1024];
+		int read;
+		while ((read = in.read(buffer)) > 0) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+
+	private static HashMap<String, String> parseForm(byte[] body) throws IOException {
+		HashMap<String, String> params = new HashMap<>();
+		for(String pair : new String(body, StandardCharsets.US_ASCII).split("&")){
+			int eq = pair.indexOf('=');
+			if(eq > 0){
+				params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"), URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+			}
+		}
+		return params;
+	}
+
+	private static String ok(Map<String, String> parts){
+		StringBuilder json = new StringBuilder("{\"status\":\"ok\",\"parts\":{");
+		boolean first = true;
+		for(Map.Entry<String, String> part : parts.entrySet()){
+			if(!first){
+				json.append(',');
+			}
+			json.append(quote(part.getKey())).append(':').append(quote(part.getValue()));
+			first = false;
+		}
+		return json.append("},\"infos\":[],\"errors\":[]}").toString();
+	}
+
+	private static String error(String message){
+		return "{\"status\":\"nok\",\"parts\":{},\"infos\":[],\"errors\":[" + quote(String.valueOf(message)) + "]}";
+	}
+
+	private static String quote(String value){
+		return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+}
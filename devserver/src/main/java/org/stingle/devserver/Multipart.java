@@ -0,0 +1,75 @@
+package org.stingle.devserver;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal multipart/form-data parser for the requests HttpsClient.multipartUpload makes.
+ */
+public class Multipart {
+
+	private static final Pattern BOUNDARY = Pattern.compile("boundary=(.+)$");
+	private static final Pattern NAME = Pattern.compile("; name=\"([^\"]*)\"");
+	private static final Pattern FILENAME = Pattern.compile("; filename=\"([^\"]*)\"");
+
+	public final HashMap<String, String> params = new HashMap<>();
+	public final HashMap<String, byte[]> files = new HashMap<>();
+	public final HashMap<String, String> filenames = new HashMap<>();
+
+	public Multipart(String contentType, byte[] body){
+		Matcher boundaryMatcher = BOUNDARY.matcher(contentType == null ? "" : contentType);
+		if(!boundaryMatcher.find()){
+			throw new IllegalArgumentException("No multipart boundary");
+		}
+		byte[] delimiter = ("--" + boundaryMatcher.group(1)).getBytes(StandardCharsets.US_ASCII);
+		byte[] headerEnd = "\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+		int pos = indexOf(body, delimiter, 0);
+		while (pos >= 0) {
+			int start = pos + delimiter.length;
+			if(start + 2 > body.length || (body[start] == '-' && body[start + 1] == '-')){
+				break;
+			}
+			int headersEnd = indexOf(body, headerEnd, start);
+			int next = indexOf(body, delimiter, start);
+			if(headersEnd < 0 || next < 0){
+				break;
+			}
+
+			String headers = new String(body, start, headersEnd - start, StandardCharsets.UTF_8);
+			int dataStart = headersEnd + headerEnd.length;
+			// The data is followed by a line end before the next delimiter
+			int dataEnd = Math.max(dataStart, next - 2);
+
+			Matcher nameMatcher = NAME.matcher(headers);
+			if(nameMatcher.find()){
+				byte[] data = new byte[dataEnd - dataStart];
+				System.arraycopy(body, dataStart, data, 0, data.length);
+				Matcher filenameMatcher = FILENAME.matcher(headers);
+				if(filenameMatcher.find()){
+					files.put(nameMatcher.group(1), data);
+					filenames.put(nameMatcher.group(1), filenameMatcher.group(1));
+				}
+				else {
+					params.put(nameMatcher.group(1), new String(data, StandardCharsets.UTF_8));
+				}
+			}
+			pos = next;
+		}
+	}
+
+	private static int indexOf(byte[] data, byte[] pattern, int from){
+		outer:
+		for(int i = from; i <= data.length - pattern.length; i++){
+			for(int j = 0; j < pattern.length; j++){
+				if(data[i + j] != pattern[j]){
+					continue outer;
+				}
+			}
+			return i;
+		}
+		return -1;
+	}
+}